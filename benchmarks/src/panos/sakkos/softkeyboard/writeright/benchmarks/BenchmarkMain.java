@@ -0,0 +1,54 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler and writes the results as JSON, for tracking
+ * them over time. Takes the options of the JMH command line too, for example a regular
+ * expression of the benchmarks to run, "-p words=1000,10000" to run some of the sizes,
+ * or "-rf csv" for another format
+ * @author Panos Sakkos
+ */
+
+public class BenchmarkMain
+{
+	public static final String RESULTS = "jmh-result.json";
+
+	public static void main(String[] args) throws Exception
+	{
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+
+		Options options = new OptionsBuilder()
+			.parent(commandLine)
+			.addProfiler(GCProfiler.class)
+			.resultFormat(commandLine.getResultFormat().hasValue() ? commandLine.getResultFormat().get() : ResultFormatType.JSON)
+			.result(commandLine.getResult().hasValue() ? commandLine.getResult().get() : RESULTS)
+			.build();
+
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright.benchmarks;
+
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Generates dictionaries of any size, the same for the same seed. The letters follow
+ * their frequency in English text and the lengths of the words one of the distributions:
+ *   short    2 to 5 letters, the prefix tree is wide and shallow
+ *   english  around 7 letters, like the words of a real dictionary
+ *   long     8 to 16 letters, the prefix tree is deep and narrow
+ * @author Panos Sakkos
+ */
+
+public class Dictionaries
+{
+	public static final String SHORT = "short";
+	public static final String ENGLISH = "english";
+	public static final String LONG = "long";
+
+	/* Frequency of a to z in English text, per thousand letters */
+
+	private static final int[] LETTER_FREQUENCIES = {
+		82, 15, 28, 43, 127, 22, 20, 61, 70, 2, 8, 40, 24,
+		67, 75, 19, 1, 60, 63, 91, 28, 10, 24, 2, 20, 1
+	};
+
+	/* Share of the words of every length from 1 letter on, per thousand words of an English dictionary */
+
+	private static final int[] ENGLISH_LENGTHS = { 3, 17, 41, 74, 108, 137, 140, 126, 103, 79, 57, 41, 29, 19, 11, 6, 5, 4 };
+
+	private Dictionaries()
+	{
+	}
+
+	/**
+	 * Returns count distinct words, in the order they were generated
+	 * @param distribution One of SHORT, ENGLISH and LONG
+	 */
+
+	public static String[] Generate(int count, String distribution, long seed)
+	{
+		Random random = new Random(seed);
+		HashSet<String> generated = new HashSet<String>(count * 2);
+		String[] words = new String[count];
+		char[] buffer = new char[32];
+
+		int letterTotal = 0;
+		for(int frequency : LETTER_FREQUENCIES)
+		{
+			letterTotal += frequency;
+		}
+
+		int lengthTotal = 0;
+		for(int share : ENGLISH_LENGTHS)
+		{
+			lengthTotal += share;
+		}
+
+		int i = 0;
+		while(i < count)
+		{
+			int length = Length(random, distribution, lengthTotal);
+
+			for(int j = 0; j < length; j++)
+			{
+				buffer[j] = Letter(random, letterTotal);
+			}
+
+			String word = new String(buffer, 0, length);
+
+			if(generated.add(word))
+			{
+				words[i++] = word;
+			}
+		}
+
+		return words;
+	}
+
+	private static int Length(Random random, String distribution, int lengthTotal)
+	{
+		if(distribution.equals(SHORT))
+		{
+			return 2 + random.nextInt(4);
+		}
+
+		if(distribution.equals(LONG))
+		{
+			return 8 + random.nextInt(9);
+		}
+
+		/* Shorter words run out, so long ones are drawn as well */
+
+		int draw = random.nextInt(lengthTotal);
+		int length = 0;
+
+		while(draw >= ENGLISH_LENGTHS[length])
+		{
+			draw -= ENGLISH_LENGTHS[length];
+			length++;
+		}
+
+		return length + 1 + (random.nextInt(8) == 0 ? random.nextInt(4) : 0);
+	}
+
+	private static char Letter(Random random, int letterTotal)
+	{
+		int draw = random.nextInt(letterTotal);
+		int letter = 0;
+
+		while(draw >= LETTER_FREQUENCIES[letter])
+		{
+			draw -= LETTER_FREQUENCIES[letter];
+			letter++;
+		}
+
+		return (char) ('a' + letter);
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import panos.sakkos.softkeyboard.writeright.FlatFileWordStore;
+import panos.sakkos.softkeyboard.writeright.InMemoryWordStore;
+import panos.sakkos.softkeyboard.writeright.Predictor;
+import panos.sakkos.softkeyboard.writeright.Statistics;
+import panos.sakkos.softkeyboard.writeright.WordStore;
+
+/**
+ * Loading the model the way the keyboard does on start up, from the database that ships
+ * with it, and persisting what was learned. Needs an SQLite JDBC driver on the classpath
+ * @author Panos Sakkos
+ */
+
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ModelLoadBenchmark
+{
+	/* Same as the staged loading of the keyboard */
+
+	private static final long MODEL_MEMORY_BUDGET = 4 * 1024 * 1024;
+
+	@Param({ "Database/writeright.db" })
+	public String database;
+
+	private InMemoryWordStore store;
+	private File image;
+	private File flatFile;
+	private FlatFileWordStore flatFileStore;
+	private ArrayList<String> learned = new ArrayList<String>();
+
+	@Setup(Level.Trial)
+	public void Load() throws Exception
+	{
+		store = ReadDatabase();
+
+		/* The image is written by the first whole dictionary load, as on the device */
+
+		image = File.createTempFile("writeright", ".trie");
+		image.delete();
+		new Predictor(store, image, MODEL_MEMORY_BUDGET);
+
+		flatFile = File.createTempFile("writeright", ".words");
+		flatFile.delete();
+		flatFileStore = new FlatFileWordStore(flatFile);
+
+		store.EnumerateWords(0, -1, new WordStore.WordVisitor()
+		{
+			public void Visit(String word, int prior, int usage, long timestamp)
+			{
+				flatFileStore.Put(word, prior, usage, timestamp);
+
+				if(learned.size() < 100)
+				{
+					learned.add(word);
+				}
+			}
+		});
+
+		flatFileStore.Flush();
+	}
+
+	@TearDown(Level.Trial)
+	public void Delete()
+	{
+		image.delete();
+		flatFile.delete();
+	}
+
+	/* What DataBaseHelper.EnumerateWords reads */
+
+	@Benchmark
+	public InMemoryWordStore ReadDatabase() throws SQLException
+	{
+		InMemoryWordStore words = new InMemoryWordStore();
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database);
+
+		try
+		{
+			Statement statement = connection.createStatement();
+			ResultSet result = statement.executeQuery("SELECT word, usage, timestamp, prior FROM Words ORDER BY _id");
+
+			while(result.next())
+			{
+				words.Put(result.getString(1), result.getInt(4), result.getInt(2), Long.parseLong(result.getString(3)));
+			}
+
+			result.close();
+			statement.close();
+		}
+		finally
+		{
+			connection.close();
+		}
+
+		return words;
+	}
+
+	@Benchmark
+	public Predictor Bootstrap()
+	{
+		return new Predictor(store, Predictor.BootstrapWords(store.Size()));
+	}
+
+	@Benchmark
+	public Predictor LoadWholeDictionary()
+	{
+		return new Predictor(store);
+	}
+
+	@Benchmark
+	public Predictor LoadWholeDictionaryFromImage()
+	{
+		return new Predictor(store, image, MODEL_MEMORY_BUDGET);
+	}
+
+	@Benchmark
+	public FlatFileWordStore ReadFlatFile() throws IOException
+	{
+		return new FlatFileWordStore(flatFile);
+	}
+
+	/* Saving after a session of typing, a hundred words were learned */
+
+	@Benchmark
+	public FlatFileWordStore SaveLearnedWords()
+	{
+		for(String word : learned)
+		{
+			flatFileStore.UpdateWords(word, new Statistics());
+		}
+
+		flatFileStore.Flush();
+		return flatFileStore;
+	}
+}
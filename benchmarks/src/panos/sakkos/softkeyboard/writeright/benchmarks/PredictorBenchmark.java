@@ -0,0 +1,159 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import panos.sakkos.softkeyboard.writeright.InMemoryWordStore;
+import panos.sakkos.softkeyboard.writeright.Predictor;
+import panos.sakkos.softkeyboard.writeright.TopKSelector;
+
+/**
+ * The keystroke path of the predictor (CharacterTyped and GetPredictions), the top k
+ * selection of TopKResize, learning a typed word and building the predictor
+ * @author Panos Sakkos
+ */
+
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PredictorBenchmark
+{
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public int words;
+
+	@Param({ Dictionaries.SHORT, Dictionaries.ENGLISH, Dictionaries.LONG })
+	public String lengths;
+
+	@Param({ "2" })
+	public int k;
+
+	private String[] dictionary;
+	private InMemoryWordStore store;
+	private Predictor predictor;
+	private TopKSelector topKSelector = new TopKSelector();
+	private float[] predictions = new float[TopKSelector.LETTERS];
+
+	/* The word being typed and the next letter of it */
+
+	private int word;
+	private int letter;
+
+	/* Predictions taken along the words of the dictionary, for the selection alone */
+
+	private float[][] recorded;
+	private int nextRecorded;
+
+	@Setup(Level.Trial)
+	public void Build() throws Exception
+	{
+		dictionary = Dictionaries.Generate(words, lengths, 1);
+		store = new InMemoryWordStore(Arrays.asList(dictionary));
+		predictor = new Predictor(store);
+		predictor.SetNotIdle();
+
+		recorded = new float[1024][];
+		for(int i = 0; i < recorded.length; i++)
+		{
+			recorded[i] = new float[TopKSelector.LETTERS];
+			Keystroke();
+			System.arraycopy(predictions, 0, recorded[i], 0, predictions.length);
+		}
+	}
+
+	/* A key of the keyboard: the predictor is told the letter and the keys are selected */
+
+	@Benchmark
+	public int Keystroke() throws Exception
+	{
+		String typed = dictionary[word];
+
+		predictor.CharacterTyped(typed.charAt(letter++));
+		predictor.GetPredictions(predictions);
+
+		if(letter == typed.length())
+		{
+			predictor.SetNotIdle();
+			word = (word + 1) % dictionary.length;
+			letter = 0;
+		}
+
+		return topKSelector.Select(predictions, k);
+	}
+
+	@Benchmark
+	public boolean GetPredictions()
+	{
+		return predictor.GetPredictions(predictions);
+	}
+
+	@Benchmark
+	public int Select()
+	{
+		nextRecorded = (nextRecorded + 1) % recorded.length;
+		return topKSelector.Select(recorded[nextRecorded], k);
+	}
+
+	/* A whole word typed and learned, as on the separator key */
+
+	@Benchmark
+	public Predictor TypeAndLearnWord() throws Exception
+	{
+		String typed = dictionary[word];
+		word = (word + 1) % dictionary.length;
+
+		predictor.SetNotIdle();
+		for(int i = 0; i < typed.length(); i++)
+		{
+			predictor.CharacterTyped(typed.charAt(i));
+		}
+
+		predictor.WordTyped();
+		return predictor;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 2)
+	@Measurement(iterations = 5)
+	@Fork(1)
+	public Predictor Construct()
+	{
+		return new Predictor(store);
+	}
+}
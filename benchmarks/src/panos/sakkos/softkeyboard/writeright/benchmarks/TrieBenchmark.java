@@ -0,0 +1,169 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import panos.sakkos.softkeyboard.writeright.ParallelTrieBuilder;
+import panos.sakkos.softkeyboard.writeright.SortedTrieBuilder;
+import panos.sakkos.softkeyboard.writeright.Trie;
+
+/**
+ * Building the prefix tree and adding, typing and walking its words, for dictionaries of
+ * every size and distribution of word lengths
+ * @author Panos Sakkos
+ */
+
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrieBenchmark
+{
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public int words;
+
+	@Param({ Dictionaries.SHORT, Dictionaries.ENGLISH, Dictionaries.LONG })
+	public String lengths;
+
+	private String[] dictionary;
+	private String[] sorted;
+	private String[] unknown;
+	private Trie trie;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void Build()
+	{
+		dictionary = Dictionaries.Generate(words, lengths, 1);
+		unknown = Dictionaries.Generate(Math.min(words, 100000), lengths, 2);
+		sorted = dictionary.clone();
+		Arrays.sort(sorted);
+		trie = new Trie();
+
+		for(String word : dictionary)
+		{
+			trie.Add(word);
+		}
+	}
+
+	/* Words are added to a copy of the dictionary that grows during the iteration */
+
+	@Setup(Level.Iteration)
+	public void Reset()
+	{
+		next = 0;
+	}
+
+	/* The whole dictionary, word by word, in one pass over the sorted words and on every processor */
+
+	@Benchmark
+	public Trie BuildByLearning()
+	{
+		Trie built = new Trie();
+
+		for(String word : sorted)
+		{
+			built.Learn(word, 1, 0);
+		}
+
+		return built;
+	}
+
+	@Benchmark
+	public Trie BuildSorted()
+	{
+		SortedTrieBuilder builder = new SortedTrieBuilder();
+
+		for(String word : sorted)
+		{
+			builder.Add(word, 1, 0);
+		}
+
+		return builder.Build();
+	}
+
+	@Benchmark
+	public Trie BuildParallel()
+	{
+		ParallelTrieBuilder builder = new ParallelTrieBuilder();
+
+		for(String word : sorted)
+		{
+			builder.Add(word, 1, 0);
+		}
+
+		return builder.Build();
+	}
+
+	@Benchmark
+	public Trie Add()
+	{
+		trie.Add(unknown[next++ % unknown.length]);
+		return trie;
+	}
+
+	@Benchmark
+	public Trie WasTyped()
+	{
+		trie.WasTyped(dictionary[next++ % dictionary.length], 1);
+		return trie;
+	}
+
+	/* What the predictor does on every key of a word */
+
+	@Benchmark
+	public int Walk()
+	{
+		String word = dictionary[next++ % dictionary.length];
+		Trie node = trie;
+		int size = 0;
+
+		for(int i = 0; i < word.length() && node != null; i++)
+		{
+			size += node.GetSubTrieSize(word.charAt(i));
+			node = node.GetSubTrie(word.charAt(i));
+		}
+
+		return size;
+	}
+
+	@Benchmark
+	public boolean Search()
+	{
+		return trie.Search(dictionary[next++ % dictionary.length]);
+	}
+}
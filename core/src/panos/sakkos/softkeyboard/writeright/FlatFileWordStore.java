@@ -0,0 +1,132 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Word store backed by a text file with a line per word: the word, its usage, its
+ * timestamp and its prior separated by tabs. Lines with just a word are unused words,
+ * so a plain word list is a valid file. The words are kept in memory and the file is
+ * rewritten on Flush.
+ * @author Panos Sakkos
+ */
+
+public class FlatFileWordStore extends InMemoryWordStore
+{
+	private File file;
+
+	public FlatFileWordStore(File file) throws IOException
+	{
+		this.file = file;
+
+		if(file.exists())
+		{
+			Load();
+		}
+	}
+
+	private void Load() throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), 1 << 16);
+
+		try
+		{
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				String[] columns = line.split("\t");
+
+				if(columns[0].length() == 0)
+				{
+					continue;
+				}
+
+				int usage = columns.length > 1 ? Integer.parseInt(columns[1]) : 0;
+				long timestamp = columns.length > 2 ? Long.parseLong(columns[2]) : 0;
+				int prior = columns.length > 3 ? Integer.parseInt(columns[3]) : 0;
+
+				Put(columns[0], prior, usage, timestamp);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Writes the words to a temporary file and renames it over the store file, so
+	 * the store is never left half written
+	 */
+
+	@Override public synchronized void Flush()
+	{
+		File temporary = new File(file.getPath() + ".tmp");
+
+		try
+		{
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8"), 1 << 16);
+
+			try
+			{
+				for(String word : words)
+				{
+					Statistics wordStatistics = statistics.get(word);
+
+					writer.write(word);
+					writer.write('\t');
+					writer.write(Integer.toString(wordStatistics.GetPopularity()));
+					writer.write('\t');
+					writer.write(Long.toString(wordStatistics.GetTimestamp()));
+					writer.write('\t');
+					writer.write(Integer.toString(wordStatistics.GetPrior()));
+					writer.write('\n');
+				}
+			}
+			finally
+			{
+				writer.close();
+			}
+
+			if(temporary.renameTo(file) == false)
+			{
+				file.delete();
+
+				if(temporary.renameTo(file) == false)
+				{
+					throw new IOException("Cannot replace " + file.getPath());
+				}
+			}
+		}
+		catch(IOException exception)
+		{
+			throw new RuntimeException(exception);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Word store that keeps everything in memory, for running the predictor
+ * off the device (tests, benchmarks, replays)
+ * @author Panos Sakkos
+ */
+
+public class InMemoryWordStore implements WordStore
+{
+	protected ArrayList<String> words = new ArrayList<String>();
+	protected HashMap<String, Statistics> statistics = new HashMap<String, Statistics>();
+
+	public InMemoryWordStore()
+	{
+	}
+
+	/**
+	 * Creates a store with the given dictionary, in order of frequency
+	 */
+
+	public InMemoryWordStore(List<String> dictionary)
+	{
+		for(String word : dictionary)
+		{
+			Put(word, 0, 0);
+		}
+	}
+
+	/**
+	 * Adds a word with the given statistics, or replaces its statistics if it exists
+	 */
+
+	public synchronized void Put(String word, int usage, long timestamp)
+	{
+		Put(word, 0, usage, timestamp);
+	}
+
+	/**
+	 * Adds a word of the dictionary with the popularity that the dictionary gives it
+	 */
+
+	public synchronized void Put(String word, int prior, int usage, long timestamp)
+	{
+		if(statistics.containsKey(word) == false)
+		{
+			words.add(word);
+		}
+
+		statistics.put(word, new Statistics(prior, usage, timestamp));
+	}
+
+	public synchronized int Size()
+	{
+		return words.size();
+	}
+
+	public synchronized void EnumerateWords(int offset, int limit, WordVisitor visitor)
+	{
+		int end = limit < 0 ? words.size() : Math.min(words.size(), offset + limit);
+
+		for(int i = offset; i < end; i++)
+		{
+			String word = words.get(i);
+			Statistics wordStatistics = statistics.get(word);
+
+			visitor.Visit(word, wordStatistics.GetPrior(), wordStatistics.GetPopularity(), wordStatistics.GetTimestamp());
+		}
+	}
+
+	public synchronized void EnumerateSortedWords(WordVisitor visitor)
+	{
+		ArrayList<String> sorted = new ArrayList<String>(words);
+		Collections.sort(sorted);
+
+		for(String word : sorted)
+		{
+			Statistics wordStatistics = statistics.get(word);
+
+			visitor.Visit(word, wordStatistics.GetPrior(), wordStatistics.GetPopularity(), wordStatistics.GetTimestamp());
+		}
+	}
+
+	public synchronized boolean ContainsWord(String word)
+	{
+		return statistics.containsKey(word);
+	}
+
+	/* Same as the database, a new word is stored unused. Like Put, a word is stored once */
+
+	public synchronized void AddNewWord(String word)
+	{
+		if(statistics.containsKey(word))
+		{
+			return;
+		}
+
+		words.add(word);
+		statistics.put(word, new Statistics(0, 0));
+	}
+
+	public synchronized void UpdateWords(String word, Statistics wordStatistics)
+	{
+		Statistics stored = statistics.get(word);
+
+		if(stored != null)
+		{
+			statistics.put(word, new Statistics(stored.GetPrior(), wordStatistics.GetPopularity(), wordStatistics.GetTimestamp()));
+		}
+	}
+
+	public synchronized void EvictWords()
+	{
+		/* Same as the database, the words of the dictionary are never evicted */
+
+		ArrayList<String> leastRecentlyUsed = new ArrayList<String>();
+		for(String word : words)
+		{
+			if(statistics.get(word).GetPrior() == 0)
+			{
+				leastRecentlyUsed.add(word);
+			}
+		}
+
+		if(leastRecentlyUsed.size() < EVICTION_THRESHOLD)
+		{
+			return;
+		}
+
+		Collections.sort(leastRecentlyUsed, new Comparator<String>()
+		{
+			public int compare(String a, String b)
+			{
+				long timestampA = statistics.get(a).GetTimestamp();
+				long timestampB = statistics.get(b).GetTimestamp();
+
+				return timestampA < timestampB ? -1 : (timestampA == timestampB ? 0 : 1);
+			}
+		});
+
+		/* Same as the database, the words used before the cutoff are evicted, not the ones used at it */
+
+		int evicted = (int) (leastRecentlyUsed.size() * EVICTION_PERCENTAGE);
+		long cutoff = statistics.get(leastRecentlyUsed.get(evicted)).GetTimestamp();
+
+		for(int i = 0; i < evicted && statistics.get(leastRecentlyUsed.get(i)).GetTimestamp() < cutoff; i++)
+		{
+			statistics.remove(leastRecentlyUsed.get(i));
+		}
+
+		ArrayList<String> kept = new ArrayList<String>(statistics.size());
+		for(String word : words)
+		{
+			if(statistics.containsKey(word))
+			{
+				kept.add(word);
+			}
+		}
+
+		words = kept;
+	}
+
+	public void Flush()
+	{
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A ring buffer of the events of the keyboard (keys, releases, swipes, cursor
+ * updates and fields) with the time they happened, that keeps the last events
+ * up to its capacity. Recording allocates nothing, and the trace is written in a
+ * compact binary form that TraceReplayer replays against the prediction core.
+ * The header keeps what the replay needs besides the events: the word separators
+ * and the aggressiveness of the keyboard when recording started
+ * @author Panos Sakkos
+ */
+
+public class KeystrokeTrace
+{
+	/* Events, with their two arguments */
+
+	public static final int KEY = 1;			/* key code, 1 if shifted */
+	public static final int RELEASE = 2;		/* key code */
+	public static final int SWIPE_UP = 3;
+	public static final int SWIPE_DOWN = 4;
+	public static final int SWIPE_LEFT = 5;
+	public static final int SWIPE_RIGHT = 6;
+	public static final int SELECTION = 7;		/* new selection start, new selection end */
+	public static final int START_INPUT = 8;	/* initial selection start, flags */
+	public static final int FINISH_INPUT = 9;
+
+	/* Flags of START_INPUT */
+
+	public static final int PREDICTION_ON = 1;
+	public static final int PREDICTION_FRIENDLY = 2;
+
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	private static final int MAGIC = 0x57524b54;
+	private static final int VERSION = 1;
+
+	private String separators;
+	private int k;
+	private int continuousSuccesses;
+
+	private byte[] types;
+	private long[] times;
+	private int[] firsts;
+	private int[] seconds;
+
+	/* The oldest event is at head once the buffer is full */
+
+	private int head;
+	private int count;
+	private long dropped;
+
+	/**
+	 * @param capacity How many of the last events are kept
+	 * @param separators The characters that separate words
+	 * @param k The aggressiveness of the keyboard when recording starts
+	 * @param continuousSuccesses The successful predictions in a row when recording starts
+	 */
+
+	public KeystrokeTrace(int capacity, String separators, int k, int continuousSuccesses)
+	{
+		this.separators = separators;
+		this.k = k;
+		this.continuousSuccesses = continuousSuccesses;
+
+		types = new byte[capacity];
+		times = new long[capacity];
+		firsts = new int[capacity];
+		seconds = new int[capacity];
+	}
+
+	public synchronized void Record(int type, int first, int second)
+	{
+		int slot = (head + count) % types.length;
+
+		if(count == types.length)
+		{
+			head = (head + 1) % types.length;
+			dropped++;
+		}
+		else
+		{
+			count++;
+		}
+
+		types[slot] = (byte) type;
+		times[slot] = System.nanoTime();
+		firsts[slot] = first;
+		seconds[slot] = second;
+	}
+
+	public synchronized int GetCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns how many events were overwritten. A trace that dropped events doesn't
+	 * start where recording started, so its replay is not exact
+	 */
+
+	public synchronized long GetDropped()
+	{
+		return dropped;
+	}
+
+	/* Events are indexed from the oldest one */
+
+	public synchronized int GetType(int i)
+	{
+		return types[(head + i) % types.length];
+	}
+
+	/**
+	 * Returns the time of an event in nanoseconds, on a clock of arbitrary origin
+	 */
+
+	public synchronized long GetTime(int i)
+	{
+		return times[(head + i) % types.length];
+	}
+
+	public synchronized int GetFirst(int i)
+	{
+		return firsts[(head + i) % types.length];
+	}
+
+	public synchronized int GetSecond(int i)
+	{
+		return seconds[(head + i) % types.length];
+	}
+
+	public String GetSeparators()
+	{
+		return separators;
+	}
+
+	public int GetK()
+	{
+		return k;
+	}
+
+	public int GetContinuousSuccesses()
+	{
+		return continuousSuccesses;
+	}
+
+	/**
+	 * Writes the trace: the header, then every event as its type, the time since the
+	 * previous event and its arguments, as variable length integers
+	 */
+
+	public synchronized void Write(OutputStream output) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(output);
+
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeUTF(separators);
+		data.writeInt(k);
+		data.writeInt(continuousSuccesses);
+		data.writeLong(dropped);
+		data.writeInt(count);
+
+		long previous = count == 0 ? 0 : GetTime(0);
+
+		for(int i = 0; i < count; i++)
+		{
+			data.writeByte(GetType(i));
+			WriteVarLong(data, GetTime(i) - previous);
+			WriteVarLong(data, ZigZag(GetFirst(i)));
+			WriteVarLong(data, ZigZag(GetSecond(i)));
+
+			previous = GetTime(i);
+		}
+
+		data.flush();
+	}
+
+	/**
+	 * Reads a trace written by Write, the first event happens at time 0
+	 */
+
+	public static KeystrokeTrace Read(InputStream input) throws IOException
+	{
+		DataInputStream data = new DataInputStream(input);
+
+		if(data.readInt() != MAGIC || data.readInt() != VERSION)
+		{
+			throw new IOException("Not a keystroke trace");
+		}
+
+		String separators = data.readUTF();
+		int k = data.readInt();
+		int continuousSuccesses = data.readInt();
+		long dropped = data.readLong();
+		int count = data.readInt();
+
+		KeystrokeTrace trace = new KeystrokeTrace(Math.max(1, count), separators, k, continuousSuccesses);
+		long time = 0;
+
+		for(int i = 0; i < count; i++)
+		{
+			trace.types[i] = data.readByte();
+			time += ReadVarLong(data);
+			trace.times[i] = time;
+			trace.firsts[i] = (int) UnZigZag(ReadVarLong(data));
+			trace.seconds[i] = (int) UnZigZag(ReadVarLong(data));
+		}
+
+		trace.count = count;
+		trace.dropped = dropped;
+
+		return trace;
+	}
+
+	/* Small negative arguments, like the codes of the special keys, are written in few bytes */
+
+	private static long ZigZag(int value)
+	{
+		return ((long) value << 1) ^ (value >> 31);
+	}
+
+	private static long UnZigZag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void WriteVarLong(DataOutputStream data, long value) throws IOException
+	{
+		while((value & ~0x7fL) != 0)
+		{
+			data.writeByte((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+
+		data.writeByte((int) value);
+	}
+
+	private static long ReadVarLong(DataInputStream data) throws IOException
+	{
+		long value = 0;
+
+		for(int shift = 0; ; shift += 7)
+		{
+			int b = data.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+
+			if((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+	}
+}
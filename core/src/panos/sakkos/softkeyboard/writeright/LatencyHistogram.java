@@ -0,0 +1,146 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+/**
+ * A histogram of durations with logarithmic buckets, every power of two split in
+ * SUB_BUCKETS linear buckets, so any duration is kept within about 6% without
+ * allocating. Records may come from several threads
+ * @author Panos Sakkos
+ */
+
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private long[] counts = new long[BUCKETS];
+	private long count;
+	private long total;
+	private long max;
+
+	/**
+	 * Records a duration
+	 * @param nanos The duration in nanoseconds, negative durations are recorded as 0
+	 */
+
+	public synchronized void Record(long nanos)
+	{
+		if(nanos < 0)
+		{
+			nanos = 0;
+		}
+
+		counts[Bucket(nanos)]++;
+		count++;
+		total += nanos;
+
+		if(nanos > max)
+		{
+			max = nanos;
+		}
+	}
+
+	public synchronized long GetCount()
+	{
+		return count;
+	}
+
+	public synchronized long GetMax()
+	{
+		return max;
+	}
+
+	public synchronized long GetMean()
+	{
+		return count == 0 ? 0 : total / count;
+	}
+
+	/**
+	 * Returns the duration that the given percentage of the records don't exceed, as the
+	 * upper bound of its bucket, or 0 if nothing was recorded
+	 * @param percentile From 0 to 100
+	 */
+
+	public synchronized long GetPercentile(double percentile)
+	{
+		if(count == 0)
+		{
+			return 0;
+		}
+
+		long wanted = Math.max(1, (long) Math.ceil(count * Math.min(100, percentile) / 100));
+		long seen = 0;
+
+		for(int bucket = 0; bucket < BUCKETS; bucket++)
+		{
+			seen += counts[bucket];
+
+			if(seen >= wanted)
+			{
+				return Math.min(UpperBound(bucket), max);
+			}
+		}
+
+		return max;
+	}
+
+	public synchronized void Reset()
+	{
+		for(int bucket = 0; bucket < BUCKETS; bucket++)
+		{
+			counts[bucket] = 0;
+		}
+
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	/* Durations below SUB_BUCKETS have a bucket each, the rest share a bucket with the durations of the same leading bits */
+
+	private static int Bucket(long nanos)
+	{
+		if(nanos < SUB_BUCKETS)
+		{
+			return (int) nanos;
+		}
+
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	private static long UpperBound(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+
+		int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+		long leading = SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1));
+
+		long bound = ((leading + 1) << shift) - 1;
+
+		return bound < 0 ? Long.MAX_VALUE : bound;
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of every stage of a keystroke and of loading and saving the
+ * model, and counters of what the keyboard did. Cheap enough to be always on, a
+ * stage costs two reads of the clock, so it can be dumped from release builds
+ * @author Panos Sakkos
+ */
+
+public class LatencyStats
+{
+	/* Stages of a keystroke */
+
+	public static final int PREDICTOR_UPDATE = 0;
+	public static final int PREDICTION = 1;
+	public static final int SELECTION = 2;
+	public static final int LAYOUT = 3;
+	public static final int INVALIDATION = 4;
+
+	/* Loading and saving */
+
+	public static final int STORE_OPEN = 5;
+	public static final int BOOTSTRAP = 6;
+	public static final int WHOLE_DICTIONARY = 7;
+	public static final int SAVE = 8;
+
+	public static final int STAGES = 9;
+
+	private static final String[] STAGE_NAMES = { "predictor update", "prediction", "top k selection", "layout", "invalidation",
+		"store open", "bootstrap", "whole dictionary", "save" };
+
+	/* Counters */
+
+	public static final int PREDICTIONS_SERVED = 0;
+	public static final int CANCELLATIONS = 1;
+	public static final int K_CHANGES = 2;
+
+	public static final int COUNTERS = 3;
+
+	private static final String[] COUNTER_NAMES = { "predictions served", "cancellations", "k changes" };
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private LatencyHistogram[] histograms = new LatencyHistogram[STAGES];
+	private AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+
+	public LatencyStats()
+	{
+		for(int stage = 0; stage < STAGES; stage++)
+		{
+			histograms[stage] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Returns the start of a stage, to be passed to Record when it ends
+	 */
+
+	public static long Start()
+	{
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records and returns the duration of a stage that started at start, in nanoseconds
+	 */
+
+	public long Record(int stage, long start)
+	{
+		long duration = System.nanoTime() - start;
+		histograms[stage].Record(duration);
+
+		return duration;
+	}
+
+	public void Count(int counter)
+	{
+		counters.incrementAndGet(counter);
+	}
+
+	public LatencyHistogram GetHistogram(int stage)
+	{
+		return histograms[stage];
+	}
+
+	public long GetCount(int counter)
+	{
+		return counters.get(counter);
+	}
+
+	public void Reset()
+	{
+		for(int stage = 0; stage < STAGES; stage++)
+		{
+			histograms[stage].Reset();
+		}
+
+		for(int counter = 0; counter < COUNTERS; counter++)
+		{
+			counters.set(counter, 0);
+		}
+	}
+
+	/**
+	 * Writes the percentiles of every stage that was recorded, in microseconds, and the counters
+	 */
+
+	public void Dump(PrintWriter writer, String prefix)
+	{
+		for(int stage = 0; stage < STAGES; stage++)
+		{
+			LatencyHistogram histogram = histograms[stage];
+
+			if(histogram.GetCount() == 0)
+			{
+				continue;
+			}
+
+			StringBuilder line = new StringBuilder(prefix);
+			line.append(STAGE_NAMES[stage]).append(": count ").append(histogram.GetCount());
+			line.append(", mean ").append(Micros(histogram.GetMean()));
+
+			for(int i = 0; i < PERCENTILES.length; i++)
+			{
+				line.append(", p").append(PERCENTILES[i] % 1 == 0 ? Long.toString((long) PERCENTILES[i]) : Double.toString(PERCENTILES[i]));
+				line.append(' ').append(Micros(histogram.GetPercentile(PERCENTILES[i])));
+			}
+
+			line.append(", max ").append(Micros(histogram.GetMax())).append(" us");
+			writer.println(line);
+		}
+
+		for(int counter = 0; counter < COUNTERS; counter++)
+		{
+			writer.println(prefix + COUNTER_NAMES[counter] + ": " + counters.get(counter));
+		}
+	}
+
+	private static String Micros(long nanos)
+	{
+		return Long.toString(nanos / 1000) + "." + Long.toString(nanos % 1000 / 100);
+	}
+}
@@ -0,0 +1,600 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Root of a prefix tree whose first letter subtrees are read from a prefix tree image
+ * the first time they are needed.
+ *
+ * The image keeps the words of the dictionary and their priors. What was typed and the
+ * words that were added after the image was written are kept separately in an overlay,
+ * and attached to every subtree that is read, so a subtree can be dropped at any time
+ * without losing anything. The most recently
+ * used subtrees are held strongly as long as they fit in the memory budget, the rest
+ * are held softly and left to the garbage collector.
+ * Subtrees are read and learned under the lock of the root, the subtrees themselves
+ * can be read by any number of threads, see Trie.
+ * @author Panos Sakkos
+ */
+
+public class LazyTrie extends Trie
+{
+	private static final int LETTERS = TrieImageWriter.LETTERS;
+
+	/* Rough heap size of a node: the Trie, its array of subtrees and its slot in the array of its parent */
+
+	public static final int ESTIMATED_NODE_BYTES = 56;
+
+	private TrieImageReader image;
+	private long memoryBudget;
+	private long residentBytes;
+
+	private int size;
+	private int popularity;
+	private boolean[] present = new boolean[LETTERS];
+	private int[] sizes = new int[LETTERS];
+	private int[] popularities = new int[LETTERS];
+
+	/* Strongly held subtrees, least recently used first */
+
+	private LinkedHashMap<Integer, Trie> resident = new LinkedHashMap<Integer, Trie>(LETTERS, 0.75f, true);
+	private int[] residentNodes = new int[LETTERS];
+	private ArrayList<SoftReference<Trie>> cold = new ArrayList<SoftReference<Trie>>(LETTERS);
+
+	/* The overlay: the records of the words typed or added after the image was written */
+
+	private ArrayList<HashMap<String, Statistics>> records = new ArrayList<HashMap<String, Statistics>>(LETTERS);
+
+	/* Words that don't start with a latin letter are not in the image */
+
+	private Trie others = new Trie();
+
+	private int loads;
+
+	/**
+	 * @param image The image to read the subtrees from
+	 * @param memoryBudget How many bytes the strongly held subtrees may take
+	 */
+
+	public LazyTrie(TrieImageReader image, long memoryBudget)
+	{
+		this.image = image;
+		this.memoryBudget = memoryBudget;
+
+		size = image.GetRootSize();
+		popularity = image.GetRootPopularity();
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			present[letter] = image.HasSubTrie(letter);
+			sizes[letter] = image.GetSubTrieSize(letter);
+			popularities[letter] = image.GetSubTriePopularity(letter);
+
+			cold.add(null);
+			records.add(new HashMap<String, Statistics>());
+		}
+	}
+
+	/**
+	 * Opens the image of a dictionary
+	 * @param imageFile The image, written by WriteImage
+	 * @return The root of the prefix tree, or null if there is no readable image. Whether it
+	 * was built from the first ImageWordCount() words of the dictionary is for the caller to
+	 * check against ImageFingerprint(). The words after them and the ones that are not
+	 * Representable must still be learned, the usage of the rest is given with Remember
+	 */
+
+	public static LazyTrie Open(File imageFile, long memoryBudget)
+	{
+		if(imageFile == null || imageFile.exists() == false)
+		{
+			return null;
+		}
+
+		TrieImageReader image;
+
+		try
+		{
+			image = new TrieImageReader(imageFile);
+		}
+		catch(IOException exception)
+		{
+			return null;
+		}
+
+		return new LazyTrie(image, memoryBudget);
+	}
+
+	/**
+	 * Writes the image of a prefix tree that holds the Representable words of the dictionary
+	 * @param wordCount How many words of the dictionary the tree was built from
+	 * @param fingerprint The fingerprint of these words, see TrieImageWriter.Fingerprint
+	 */
+
+	public static void WriteImage(File imageFile, Trie root, int wordCount, long fingerprint) throws IOException
+	{
+		File temporary = new File(imageFile.getPath() + ".tmp");
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16);
+
+		try
+		{
+			TrieImageWriter.Write(root, wordCount, fingerprint, output);
+		}
+		finally
+		{
+			output.close();
+		}
+
+		if(temporary.renameTo(imageFile) == false)
+		{
+			imageFile.delete();
+
+			if(temporary.renameTo(imageFile) == false)
+			{
+				throw new IOException("Cannot replace " + imageFile.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Returns if a word can be stored in an image, only latin letters can
+	 */
+
+	public static boolean Representable(String word)
+	{
+		if(word.length() == 0)
+		{
+			return false;
+		}
+
+		for(int i = 0; i < word.length(); i++)
+		{
+			char character = Character.toLowerCase(word.charAt(i));
+
+			if(character < 'a' || character > 'z')
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public int ImageWordCount()
+	{
+		return image.GetWordCount();
+	}
+
+	public long ImageFingerprint()
+	{
+		return image.GetFingerprint();
+	}
+
+	/**
+	 * Closes the image, for a root that is not going to be used
+	 */
+
+	public void Close()
+	{
+		image.Close();
+	}
+
+	/**
+	 * Keeps what was typed of a word of the image, without reading its subtree. The image
+	 * already counts the prior of the word. Must be called before the subtree is read
+	 * @param learned The record of the word, kept as it is
+	 */
+
+	synchronized void Remember(String word, Statistics learned)
+	{
+		word = word.toLowerCase();
+		int letter = LetterIndex(word.charAt(0));
+
+		records.get(letter).put(word, learned);
+		popularity += learned.GetPrior() + learned.GetPopularity();
+		popularities[letter] += learned.GetPrior() + learned.GetPopularity();
+	}
+
+	@Override public synchronized Statistics Learn(String word, int prior, int times, long timestamp)
+	{
+		word = word.toLowerCase();
+		int letter = word.length() == 0 ? -1 : LetterIndex(word.charAt(0));
+		popularity += prior + times;
+
+		if(letter < 0)
+		{
+			int words = others.Size();
+			Statistics learned = others.Learn(word, prior, times, timestamp);
+			size += others.Size() - words;
+
+			return learned;
+		}
+
+		popularities[letter] += prior + times;
+
+		/* A word that is not in the overlay may be in the image, its subtree is read to know */
+
+		String rest = word.substring(1);
+		Statistics learned = records.get(letter).get(word);
+		Trie subTrie = learned == null ? Load(letter) : resident.get(letter);
+		boolean added = false;
+
+		if(subTrie == null && learned == null)
+		{
+			/* The first word of a letter that the image doesn't have */
+
+			subTrie = new Trie();
+			present[letter] = true;
+			resident.put(letter, subTrie);
+			residentNodes[letter] = 1;
+			residentBytes += ESTIMATED_NODE_BYTES;
+		}
+
+		if(subTrie != null)
+		{
+			added = learned == null && subTrie.GetRecord(rest) == null;
+
+			/* The record in the subtree is the one in the overlay, if there is one */
+
+			learned = subTrie.Learn(rest, prior, times, timestamp);
+		}
+		else
+		{
+			learned.AddPrior(prior);
+			learned.WordTyped(times, timestamp);
+		}
+
+		if(added)
+		{
+			size++;
+			sizes[letter] = subTrie.Size();
+			residentNodes[letter] += rest.length();
+			residentBytes += (long) rest.length() * ESTIMATED_NODE_BYTES;
+		}
+
+		records.get(letter).put(word, learned);
+		cold.set(letter, null);
+
+		return learned;
+	}
+
+	@Override public synchronized Statistics GetRecord(String word)
+	{
+		word = word.toLowerCase();
+		int letter = word.length() == 0 ? -1 : LetterIndex(word.charAt(0));
+
+		if(letter < 0)
+		{
+			return others.GetRecord(word);
+		}
+
+		Statistics learned = records.get(letter).get(word);
+
+		if(learned != null)
+		{
+			return learned;
+		}
+
+		Trie subTrie = Load(letter);
+		return subTrie == null ? null : subTrie.GetRecord(word.substring(1));
+	}
+
+	/**
+	 * Visits the words of the overlay that were typed, the rest of the image never was
+	 */
+
+	@Override public synchronized void EnumerateLearned(RecordVisitor visitor)
+	{
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			for(Map.Entry<String, Statistics> entry : records.get(letter).entrySet())
+			{
+				if(entry.getValue().GetPopularity() > 0)
+				{
+					visitor.Visit(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+
+		others.EnumerateLearned(visitor);
+	}
+
+	@Override public int Size()
+	{
+		return size;
+	}
+
+	@Override public int GetSubTrieSize(char letter)
+	{
+		int index = LetterIndex(Character.toLowerCase(letter));
+
+		if(index < 0)
+		{
+			return others.GetSubTrieSize(letter);
+		}
+
+		return present[index] ? sizes[index] : 0;
+	}
+
+	@Override public int GetPopularity(char nextLetter)
+	{
+		int index = LetterIndex(Character.toLowerCase(nextLetter));
+
+		if(index < 0)
+		{
+			return others.GetPopularity(nextLetter);
+		}
+
+		return present[index] ? popularities[index] : 0;
+	}
+
+	@Override int GetPopularity()
+	{
+		return popularity;
+	}
+
+	@Override public Trie GetSubTrie(char characterTyped)
+	{
+		int index = LetterIndex(Character.toLowerCase(characterTyped));
+
+		if(index < 0)
+		{
+			return others.GetSubTrie(characterTyped);
+		}
+
+		return Load(index);
+	}
+
+	@Override public synchronized void Clear()
+	{
+		resident.clear();
+		residentBytes = 0;
+		others.Clear();
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			present[letter] = false;
+			residentNodes[letter] = 0;
+			cold.set(letter, null);
+			records.get(letter).clear();
+		}
+	}
+
+	/**
+	 * Changes the memory budget, the subtrees that don't fit any more are held softly
+	 */
+
+	public synchronized void SetMemoryBudget(long memoryBudget)
+	{
+		this.memoryBudget = memoryBudget;
+		ShedToBudget(0);
+	}
+
+	/**
+	 * Moves every subtree to the soft references, without changing the budget
+	 * @return How many bytes the strongly held subtrees took
+	 */
+
+	public synchronized long Shed()
+	{
+		long shed = residentBytes;
+		long budget = memoryBudget;
+
+		memoryBudget = 0;
+		ShedToBudget(0);
+		memoryBudget = budget;
+
+		return shed - residentBytes;
+	}
+
+	/**
+	 * Drops every subtree that was read from the image, the softly held ones too, they are
+	 * read again when they are needed
+	 * @return Roughly how many bytes were released
+	 */
+
+	public synchronized long Compact()
+	{
+		long compacted = Shed();
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			SoftReference<Trie> reference = cold.get(letter);
+
+			if(reference != null && reference.get() != null)
+			{
+				compacted += (long) residentNodes[letter] * ESTIMATED_NODE_BYTES;
+			}
+
+			cold.set(letter, null);
+		}
+
+		return compacted;
+	}
+
+	public long GetResidentBytes()
+	{
+		return residentBytes;
+	}
+
+	public int GetResidentSubTries()
+	{
+		return resident.size();
+	}
+
+	/**
+	 * Returns the subtrees that were read and are still in memory, without reading any
+	 */
+
+	@Override synchronized Trie[] SubTries()
+	{
+		ArrayList<Trie> loaded = new ArrayList<Trie>(resident.values());
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			SoftReference<Trie> reference = cold.get(letter);
+			Trie subTrie = reference == null ? null : reference.get();
+
+			if(subTrie != null)
+			{
+				loaded.add(subTrie);
+			}
+		}
+
+		loaded.add(others);
+
+		return loaded.toArray(new Trie[loaded.size()]);
+	}
+
+	/**
+	 * Returns the records that the overlay keeps, see ModelFootprint
+	 */
+
+	synchronized List<HashMap<String, Statistics>> GetOverlay()
+	{
+		return records;
+	}
+
+	public int GetImageSubTries()
+	{
+		int subTries = 0;
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			subTries += present[letter] ? 1 : 0;
+		}
+
+		return subTries;
+	}
+
+	/**
+	 * Returns how many times a subtree was read from the image
+	 */
+
+	public int GetLoads()
+	{
+		return loads;
+	}
+
+	private synchronized Trie Load(int letter)
+	{
+		Trie subTrie = resident.get(letter);
+
+		if(subTrie != null)
+		{
+			return subTrie;
+		}
+
+		if(present[letter] == false)
+		{
+			return null;
+		}
+
+		int nodes;
+		SoftReference<Trie> reference = cold.get(letter);
+		subTrie = reference == null ? null : reference.get();
+		cold.set(letter, null);
+
+		if(subTrie != null)
+		{
+			nodes = residentNodes[letter];
+		}
+		else
+		{
+			int[] nodeCount = new int[1];
+
+			try
+			{
+				subTrie = image.ReadSubTrie(letter, true, nodeCount);
+			}
+			catch(IOException exception)
+			{
+				/* The image is gone, words of this letter are predicted from the overlay only */
+
+				subTrie = null;
+			}
+
+			nodes = nodeCount[0];
+
+			if(subTrie == null)
+			{
+				subTrie = new Trie();
+				nodes = 1;
+			}
+
+			/* Attach the overlay */
+
+			for(Map.Entry<String, Statistics> entry : records.get(letter).entrySet())
+			{
+				if(subTrie.Attach(entry.getKey().substring(1), entry.getValue()))
+				{
+					nodes += entry.getKey().length() - 1;
+				}
+			}
+
+			loads++;
+		}
+
+		resident.put(letter, subTrie);
+		residentNodes[letter] = nodes;
+		residentBytes += (long) nodes * ESTIMATED_NODE_BYTES;
+
+		/* Keep the subtree that was just asked for */
+
+		ShedToBudget(1);
+
+		return subTrie;
+	}
+
+	/* Moves the least recently used subtrees to the soft references until the rest fit in the budget */
+
+	private void ShedToBudget(int keep)
+	{
+		Iterator<Map.Entry<Integer, Trie>> leastRecentlyUsed = resident.entrySet().iterator();
+
+		while(residentBytes > memoryBudget && resident.size() > keep && leastRecentlyUsed.hasNext())
+		{
+			Map.Entry<Integer, Trie> entry = leastRecentlyUsed.next();
+			int letter = entry.getKey().intValue();
+
+			cold.set(letter, new SoftReference<Trie>(entry.getValue()));
+			residentBytes -= (long) residentNodes[letter] * ESTIMATED_NODE_BYTES;
+			leastRecentlyUsed.remove();
+		}
+	}
+
+	private static int LetterIndex(char letter)
+	{
+		return letter >= 'a' && letter <= 'z' ? letter - 'a' : -1;
+	}
+}
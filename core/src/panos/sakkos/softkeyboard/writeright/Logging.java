@@ -0,0 +1,78 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+/**
+ * Holds the logger of the prediction core. Until one is set, nothing is logged
+ * @author Panos Sakkos
+ */
+
+public final class Logging
+{
+	private static final Logger SILENT = new Logger()
+	{
+		public void Debug(String message)
+		{
+		}
+
+		public void Info(String message)
+		{
+		}
+
+		public void Error(String message)
+		{
+		}
+	};
+
+	private static volatile Logger logger = SILENT;
+
+	private Logging()
+	{
+	}
+
+	/**
+	 * @param logger The logger to use, null to log nothing
+	 */
+
+	public static void SetLogger(Logger logger)
+	{
+		Logging.logger = logger == null ? SILENT : logger;
+	}
+
+	public static Logger GetLogger()
+	{
+		return logger;
+	}
+
+	public static void Debug(String message)
+	{
+		logger.Debug(message);
+	}
+
+	public static void Info(String message)
+	{
+		logger.Info(message);
+	}
+
+	public static void Error(String message)
+	{
+		logger.Error(message);
+	}
+}
@@ -0,0 +1,451 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accounts for the heap that a model takes, structure by structure: the nodes of the
+ * prefix tree and their arrays of subtrees, the Statistics of the words and the overlay
+ * of a lazy prefix tree. The sizes are computed from the layout of the objects on a VM,
+ * not measured, so the same model can be measured on a device and on a standard JVM
+ * and representations can be compared. Only the parts of the prefix tree that are in
+ * memory are counted, nothing is read from the image.
+ *
+ * The growth of the prefix tree is fitted from the nodes that the words in memory need
+ * and that two samples of them need, so memory can be projected to larger dictionaries
+ * @author Panos Sakkos
+ */
+
+public class ModelFootprint
+{
+	/**
+	 * The sizes of the parts of objects on a VM
+	 */
+
+	public static class Layout
+	{
+		/* Dalvik, and ART before compressed strings: 8 byte headers, strings point to arrays of chars */
+
+		public static final Layout DALVIK = new Layout("dalvik", 8, 4, 12, 2);
+
+		/* 64 bit HotSpot with compressed references and Latin-1 strings */
+
+		public static final Layout HOTSPOT = new Layout("hotspot", 12, 4, 6, 1);
+
+		private String name;
+		private int header;
+		private int reference;
+		private int stringFields;
+		private int bytesPerCharacter;
+
+		public Layout(String name, int header, int reference, int stringFields, int bytesPerCharacter)
+		{
+			this.name = name;
+			this.header = header;
+			this.reference = reference;
+			this.stringFields = stringFields;
+			this.bytesPerCharacter = bytesPerCharacter;
+		}
+
+		public static Layout ForThisVm()
+		{
+			String vm = System.getProperty("java.vm.name", "");
+
+			return vm.contains("Dalvik") || vm.contains("ART") ? DALVIK : HOTSPOT;
+		}
+
+		public String GetName()
+		{
+			return name;
+		}
+
+		long ObjectBytes(long fields)
+		{
+			return Align(header + fields);
+		}
+
+		long ArrayBytes(long length, int elementBytes)
+		{
+			return Align(header + 4 + length * elementBytes);
+		}
+
+		long StringBytes(String string)
+		{
+			int perCharacter = bytesPerCharacter;
+
+			for(int i = 0; i < string.length() && perCharacter == 1; i++)
+			{
+				perCharacter = string.charAt(i) > 0xff ? 2 : 1;
+			}
+
+			return ObjectBytes(reference + stringFields) + ArrayBytes(string.length(), perCharacter);
+		}
+
+		/* A HashMap, or a HashSet, of the given size at the default load factor */
+
+		long MapBytes(int size)
+		{
+			long capacity = 16;
+			while(capacity * 3 / 4 < size)
+			{
+				capacity *= 2;
+			}
+
+			return ObjectBytes(4 * 4 + 4 * reference) + ArrayBytes(capacity, reference) + size * ObjectBytes(4 + 3 * reference);
+		}
+
+		private static long Align(long bytes)
+		{
+			return (bytes + 7) & ~7L;
+		}
+	}
+
+	/* Structures */
+
+	public static final int TRIE_NODES = 0;
+	public static final int SUBTRIE_ARRAYS = 1;
+	public static final int STATISTICS = 2;
+	public static final int OVERLAY = 3;
+	public static final int BOOKKEEPING = 4;
+
+	public static final int STRUCTURES = 5;
+
+	private static final String[] STRUCTURE_NAMES = { "trie nodes", "subtrie arrays", "statistics", "overlay",
+		"bookkeeping" };
+
+	/* Samples of the words: all of them, about a half and about a quarter */
+
+	private static final int SAMPLES = 3;
+	private static final int ALL_SAMPLES = (1 << SAMPLES) - 1;
+
+	private Layout layout;
+	private long[] bytes = new long[STRUCTURES];
+
+	private int words;
+	private long nodes;
+	private long edges;
+	private long innerNodes;
+	private int maxDepth;
+
+	/* Words in memory and the nodes that their prefix tree needs, for every sample */
+
+	private int[] sampleWords = new int[SAMPLES];
+	private long[] sampleNodes = new long[SAMPLES];
+	private double growth;
+
+	/* Records of the overlay, until they are found in the prefix tree */
+
+	private IdentityHashMap<Statistics, Boolean> unseen = new IdentityHashMap<Statistics, Boolean>();
+
+	private ModelFootprint(Layout layout)
+	{
+		this.layout = layout;
+	}
+
+	/**
+	 * Measures a model. Learning waits until it is measured
+	 */
+
+	public static ModelFootprint Measure(Predictor predictor, Layout layout)
+	{
+		ModelFootprint footprint = new ModelFootprint(layout);
+
+		synchronized(predictor)
+		{
+			Trie root = predictor.GetRoot();
+
+			if(root instanceof LazyTrie)
+			{
+				footprint.MeasureOverlay(((LazyTrie) root).GetOverlay());
+			}
+
+			footprint.words = root.Size() - 1;
+			footprint.MeasureTrie(root, 0, 0);
+
+			/* Records of the overlay whose subtrees are not in memory */
+
+			footprint.bytes[STATISTICS] += footprint.unseen.size() * layout.ObjectBytes(4 + 4 + 8);
+			footprint.unseen = null;
+
+			footprint.bytes[BOOKKEEPING] += predictor.GetBookkeepingEntries() * layout.ObjectBytes(4 + 3 * layout.reference);
+		}
+
+		footprint.FitGrowth();
+
+		return footprint;
+	}
+
+	public long GetBytes(int structure)
+	{
+		return bytes[structure];
+	}
+
+	public long GetTotalBytes()
+	{
+		long total = 0;
+
+		for(int structure = 0; structure < STRUCTURES; structure++)
+		{
+			total += bytes[structure];
+		}
+
+		return total;
+	}
+
+	public int GetWords()
+	{
+		return words;
+	}
+
+	/**
+	 * Returns the nodes of the prefix tree that are in memory
+	 */
+
+	public long GetNodes()
+	{
+		return nodes;
+	}
+
+	/**
+	 * Returns the words whose nodes are in memory
+	 */
+
+	public int GetResidentWords()
+	{
+		return sampleWords[0];
+	}
+
+	/**
+	 * Returns the average number of subtrees of the nodes that have any
+	 */
+
+	public double GetAverageFanOut()
+	{
+		return innerNodes == 0 ? 0 : (double) edges / innerNodes;
+	}
+
+	public double GetBytesPerWord()
+	{
+		return words == 0 ? 0 : (double) GetTotalBytes() / words;
+	}
+
+	/**
+	 * Returns the exponent of the growth of the prefix tree, nodes grow as words to this power
+	 */
+
+	public double GetGrowth()
+	{
+		return growth;
+	}
+
+	/**
+	 * Projects the nodes of the prefix tree of a dictionary of the given number of words
+	 */
+
+	public long ProjectNodes(int dictionaryWords)
+	{
+		if(sampleWords[0] == 0)
+		{
+			return 0;
+		}
+
+		return (long) (sampleNodes[0] * Math.pow((double) dictionaryWords / sampleWords[0], growth));
+	}
+
+	/**
+	 * Projects the bytes of a model of the given number of words, with the whole prefix tree
+	 * in memory. The structures of the words grow linearly and the prefix tree by its growth
+	 */
+
+	public long ProjectBytes(int dictionaryWords)
+	{
+		if(words == 0 || nodes == 0)
+		{
+			return 0;
+		}
+
+		double perNode = (double) (bytes[TRIE_NODES] + bytes[SUBTRIE_ARRAYS]) / nodes;
+		double perWord = (double) (bytes[STATISTICS] + bytes[OVERLAY] + bytes[BOOKKEEPING]) / words;
+
+		return (long) (perNode * ProjectNodes(dictionaryWords) + perWord * dictionaryWords);
+	}
+
+	/**
+	 * Writes the accounting, and projections to the given dictionary sizes
+	 */
+
+	public void Dump(PrintWriter writer, String prefix, int[] projections)
+	{
+		writer.println(prefix + "layout: " + layout.GetName() + ", words: " + words + " (" + GetResidentWords() + " in memory), nodes: " + nodes
+			+ ", average fan out: " + String.format("%.2f", GetAverageFanOut()) + ", max depth: " + maxDepth);
+
+		for(int structure = 0; structure < STRUCTURES; structure++)
+		{
+			writer.println(prefix + STRUCTURE_NAMES[structure] + ": " + bytes[structure] + " bytes"
+				+ String.format(" (%.1f per word)", words == 0 ? 0.0 : (double) bytes[structure] / words));
+		}
+
+		writer.println(prefix + "total: " + GetTotalBytes() + " bytes" + String.format(" (%.1f per word)", GetBytesPerWord()));
+		writer.println(prefix + "prefix tree growth: nodes ~ words^" + String.format("%.3f", growth));
+
+		for(int i = 0; i < projections.length; i++)
+		{
+			writer.println(prefix + "projected at " + projections[i] + " words: " + ProjectNodes(projections[i]) + " nodes, "
+				+ ProjectBytes(projections[i]) + " bytes");
+		}
+	}
+
+	/**
+	 * Counts a node and the nodes below it
+	 * @param hash The hash of the word that ends at the node, as String.hashCode
+	 * @return A bit for every sample that has a word at the node or below it
+	 */
+
+	private int MeasureTrie(Trie node, int depth, int hash)
+	{
+		Trie[] subTries = node.SubTries();
+		Statistics record = node.GetRecord();
+		int ends = record == null ? 0 : Samples(hash);
+		int samples = ends;
+
+		nodes++;
+		maxDepth = Math.max(maxDepth, depth);
+		bytes[TRIE_NODES] += layout.ObjectBytes(4 + 4 + 2 + 2 * layout.reference);
+
+		if(record != null)
+		{
+			if(unseen.remove(record) == null)
+			{
+				bytes[STATISTICS] += layout.ObjectBytes(4 + 4 + 8);
+			}
+		}
+
+		if(subTries.length > 0)
+		{
+			innerNodes++;
+			edges += subTries.length;
+
+			/* The root of a lazy prefix tree builds its array to be measured, it doesn't keep one */
+
+			if(node instanceof LazyTrie == false)
+			{
+				bytes[SUBTRIE_ARRAYS] += layout.ArrayBytes(subTries.length, layout.reference);
+			}
+		}
+
+		for(int i = 0; i < subTries.length; i++)
+		{
+			samples |= MeasureTrie(subTries[i], depth + 1, 31 * hash + subTries[i].GetLetter());
+		}
+
+		/* Every sample needs the root */
+
+		if(depth == 0)
+		{
+			samples = ALL_SAMPLES;
+		}
+
+		for(int sample = 0; sample < SAMPLES; sample++)
+		{
+			if((samples & (1 << sample)) != 0)
+			{
+				sampleNodes[sample]++;
+			}
+		}
+
+		for(int sample = 0; sample < SAMPLES; sample++)
+		{
+			if((ends & (1 << sample)) != 0)
+			{
+				sampleWords[sample]++;
+			}
+		}
+
+		return samples;
+	}
+
+	/* The samples that a word is in, by its hash */
+
+	private static int Samples(int hash)
+	{
+		int mixed = hash * 0x9e3779b9;
+		int samples = 1;
+
+		for(int sample = 1; sample < SAMPLES; sample++)
+		{
+			if((mixed >>> (32 - sample)) == 0)
+			{
+				samples |= 1 << sample;
+			}
+		}
+
+		return samples;
+	}
+
+	private void MeasureOverlay(List<HashMap<String, Statistics>> overlay)
+	{
+		for(int letter = 0; letter < overlay.size(); letter++)
+		{
+			HashMap<String, Statistics> records = overlay.get(letter);
+			bytes[OVERLAY] += layout.MapBytes(records.size());
+
+			for(Map.Entry<String, Statistics> entry : records.entrySet())
+			{
+				bytes[OVERLAY] += layout.StringBytes(entry.getKey());
+				unseen.put(entry.getValue(), Boolean.TRUE);
+			}
+		}
+
+		bytes[OVERLAY] += layout.ArrayBytes(overlay.size(), layout.reference);
+	}
+
+	/* Least squares of the logarithms of the nodes against the words */
+
+	private void FitGrowth()
+	{
+		double sumX = 0, sumY = 0, sumXY = 0, sumXX = 0;
+		int points = 0;
+
+		for(int sample = 0; sample < SAMPLES; sample++)
+		{
+			if(sampleWords[sample] < 2)
+			{
+				continue;
+			}
+
+			double x = Math.log(sampleWords[sample]);
+			double y = Math.log(sampleNodes[sample]);
+
+			sumX += x;
+			sumY += y;
+			sumXY += x * y;
+			sumXX += x * x;
+			points++;
+		}
+
+		double denominator = points * sumXX - sumX * sumX;
+		growth = points < 2 || denominator == 0 ? 1 : (points * sumXY - sumX * sumY) / denominator;
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Builds the prefix tree of a whole dictionary on several threads. The subtrees of the
+ * first letters share no node, so the words are partitioned by their first letter, the
+ * subtree of every letter is built on its own by a SortedTrieBuilder, on a pool of
+ * threads, and the subtrees are attached to a root whose size and popularity are the
+ * sums of theirs. Words that don't start with a latin letter are learned on the root
+ * afterwards. Small dictionaries, and devices with one core, are built the same way on
+ * the calling thread.
+ * The platform has no fork/join pool before API 21, so the subtrees are tasks of a fixed
+ * pool, the largest first so that no thread is left with a large one at the end
+ * @author Panos Sakkos
+ */
+
+public class ParallelTrieBuilder
+{
+	private static final int LETTERS = Predictor.latinLetters.length;
+
+	/* Below this many words starting the threads costs more than it saves */
+
+	public static final int PARALLEL_WORDS = 10000;
+
+	private int threads;
+	private int words;
+	private Partition[] partitions = new Partition[LETTERS];
+	private Partition others = new Partition();
+
+	/**
+	 * Builds on as many threads as there are processors
+	 */
+
+	public ParallelTrieBuilder()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads How many threads may build at the same time, 1 builds on the calling thread
+	 */
+
+	public ParallelTrieBuilder(int threads)
+	{
+		this.threads = Math.max(1, Math.min(threads, LETTERS));
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			partitions[letter] = new Partition();
+		}
+	}
+
+	/**
+	 * Adds the next word, the words of every first letter are built faster in ascending
+	 * order, see SortedTrieBuilder
+	 * @param usage How many times the word was typed
+	 * @param timestamp When the word was last typed
+	 */
+
+	public void Add(String word, int usage, long timestamp)
+	{
+		Add(word, 0, usage, timestamp);
+	}
+
+	/**
+	 * Adds the next word of the dictionary with the popularity that the dictionary gives it
+	 * @param prior The popularity of the word in the dictionary, see Statistics.GetPrior
+	 */
+
+	public void Add(String word, int prior, int usage, long timestamp)
+	{
+		assert Trie.ValidWord(word);
+
+		/* Ignore capitals */
+
+		word = word.toLowerCase();
+		int letter = word.length() == 0 ? -1 : LetterIndex(word.charAt(0));
+
+		(letter < 0 ? others : partitions[letter]).Add(word, prior, usage, timestamp);
+		words++;
+	}
+
+	/**
+	 * Builds the prefix tree, the builder can't be used after it
+	 */
+
+	public Trie Build()
+	{
+		Trie[] subTries = new Trie[LETTERS];
+
+		if(threads > 1 && words >= PARALLEL_WORDS)
+		{
+			BuildConcurrently(subTries);
+		}
+
+		/* Builds everything on the calling thread, or what the threads didn't build */
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			if(subTries[letter] == null && partitions[letter].count > 0)
+			{
+				subTries[letter] = partitions[letter].call();
+			}
+		}
+
+		/* Every word passes through the root */
+
+		Trie root = new Trie();
+		int size = 1;
+		int popularity = 0;
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			Trie subTrie = subTries[letter];
+
+			if(subTrie != null)
+			{
+				root.SetSubTrie(Predictor.latinLetters[letter], subTrie);
+				size += subTrie.Size() - 1 + (subTrie.GetRecord() == null ? 0 : 1);
+				popularity += subTrie.GetPopularity();
+			}
+		}
+
+		root.SetCounts(size, popularity);
+
+		for(int i = 0; i < others.count; i++)
+		{
+			root.Learn(others.words[i], others.priors[i], others.usages[i], others.timestamps[i]);
+		}
+
+		return root;
+	}
+
+	/* Builds the subtrees on a pool of threads, leaves null the ones that it couldn't build */
+
+	private void BuildConcurrently(Trie[] subTries)
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			public Thread newThread(Runnable runnable)
+			{
+				return new Thread(runnable, "ParallelTrieBuilder");
+			}
+		});
+
+		ArrayList<Future<Trie>> futures = new ArrayList<Future<Trie>>(LETTERS);
+		boolean[] submitted = new boolean[LETTERS];
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			futures.add(null);
+		}
+
+		try
+		{
+			/* The largest partitions first */
+
+			for(int i = 0; i < LETTERS; i++)
+			{
+				int largest = -1;
+
+				for(int letter = 0; letter < LETTERS; letter++)
+				{
+					if(submitted[letter] == false && partitions[letter].count > 0 && (largest < 0 || partitions[letter].count > partitions[largest].count))
+					{
+						largest = letter;
+					}
+				}
+
+				if(largest < 0)
+				{
+					break;
+				}
+
+				futures.set(largest, pool.submit(partitions[largest]));
+				submitted[largest] = true;
+			}
+
+			for(int letter = 0; letter < LETTERS; letter++)
+			{
+				if(futures.get(letter) != null)
+				{
+					subTries[letter] = futures.get(letter).get();
+				}
+			}
+		}
+		catch(InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			Logging.Error("PARALLEL TRIE BUILD: INTERRUPTED");
+		}
+		catch(ExecutionException exception)
+		{
+			Logging.Error("PARALLEL TRIE BUILD: FAILED");
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	private static int LetterIndex(char letter)
+	{
+		return letter >= 'a' && letter <= 'z' ? letter - 'a' : -1;
+	}
+
+	/* The words of a first letter, in the order they were added, and the task that builds their subtree */
+
+	private static class Partition implements Callable<Trie>
+	{
+		private String[] words = new String[16];
+		private int[] priors = new int[16];
+		private int[] usages = new int[16];
+		private long[] timestamps = new long[16];
+		private int count;
+
+		void Add(String word, int prior, int usage, long timestamp)
+		{
+			if(count == words.length)
+			{
+				String[] grownWords = new String[count * 2];
+				int[] grownPriors = new int[count * 2];
+				int[] grownUsages = new int[count * 2];
+				long[] grownTimestamps = new long[count * 2];
+
+				System.arraycopy(words, 0, grownWords, 0, count);
+				System.arraycopy(priors, 0, grownPriors, 0, count);
+				System.arraycopy(usages, 0, grownUsages, 0, count);
+				System.arraycopy(timestamps, 0, grownTimestamps, 0, count);
+
+				words = grownWords;
+				priors = grownPriors;
+				usages = grownUsages;
+				timestamps = grownTimestamps;
+			}
+
+			words[count] = word;
+			priors[count] = prior;
+			usages[count] = usage;
+			timestamps[count] = timestamp;
+			count++;
+		}
+
+		/* The first letter is the root of the subtree, the builder starts past it */
+
+		public Trie call()
+		{
+			SortedTrieBuilder builder = new SortedTrieBuilder();
+
+			for(int i = 0; i < count; i++)
+			{
+				builder.Add(words[i], 1, priors[i], usages[i], timestamps[i]);
+			}
+
+			return builder.Build();
+		}
+	}
+}
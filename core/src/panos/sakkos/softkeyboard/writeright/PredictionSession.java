@@ -0,0 +1,264 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package panos.sakkos.softkeyboard.writeright;
+
+/**
+ * The word that one user is typing, predicted by a shared Predictor. A session is
+ * used by one thread at a time, while any number of sessions predict from the same
+ * Predictor concurrently; predicting takes no lock, only learning a typed word does
+ * @author Panos Sakkos
+ */
+
+public class PredictionSession
+{
+	private Predictor model;
+
+	/* Current word typed and its prefix tree, null if the word is unknown */
+
+	private StringBuilder word = new StringBuilder();
+	private Trie subTrie;
+	private boolean idle = false;
+
+	/* Predictions computed ahead of time, for the prefixes that are likely to be typed next */
+
+	private static final int PREFETCHED = 4;
+
+	private Trie[] prefetchedNodes = new Trie[PREFETCHED];
+	private float[][] prefetchedPredictions = new float[PREFETCHED][TopKSelector.LETTERS];
+	private int prefetchedGeneration;
+	private int nextPrefetched;
+	private int prefetchHits;
+
+	/**
+	 * @param model The predictor whose model the session predicts from
+	 */
+
+	public PredictionSession(Predictor model)
+	{
+		this.model = model;
+		subTrie = model.GetRoot();
+		prefetchedGeneration = model.GetGeneration();
+	}
+
+	/**
+	 * Fills the probability of each possible next character, without allocating
+	 * @param predictions Receives the probability of Predictor.latinLetters[i] at i
+	 * @return false if there are no predictions, because the word being typed is unknown
+	 */
+
+	public boolean GetPredictions(float[] predictions)
+	{
+		/* If subTrie is null, then the word being typed is not in the dictionary */
+
+		if(subTrie == null || idle)
+		{
+			for(int i = 0; i < Predictor.latinLetters.length; i++)
+			{
+				predictions[i] = 0;
+			}
+
+			return false;
+		}
+
+		int slot = Prefetched(subTrie);
+
+		if(slot >= 0)
+		{
+			System.arraycopy(prefetchedPredictions[slot], 0, predictions, 0, predictions.length);
+			prefetchHits++;
+			return true;
+		}
+
+		model.Evaluate(subTrie, predictions);
+
+		return true;
+	}
+
+	/**
+	 * Computes ahead of time the predictions that GetPredictions will return if
+	 * the given letter is typed next, without changing the word being typed
+	 * @param letter The letter that may be typed next
+	 * @param predictions Receives the predictions after the letter, can be null
+	 * @return false if there is nothing to prefetch for the letter
+	 */
+
+	public boolean Prefetch(char letter, float[] predictions)
+	{
+		/* The subtrees of the root may be read from the image, too slow to do ahead of time */
+
+		if(subTrie == null || subTrie == model.GetRoot() || idle)
+		{
+			return false;
+		}
+
+		Trie next = subTrie.GetSubTrie(letter);
+
+		if(next == null)
+		{
+			return false;
+		}
+
+		int slot = Prefetched(next);
+
+		if(slot < 0)
+		{
+			slot = nextPrefetched;
+			nextPrefetched = (nextPrefetched + 1) % PREFETCHED;
+
+			model.Evaluate(next, prefetchedPredictions[slot]);
+			prefetchedNodes[slot] = next;
+		}
+
+		if(predictions != null)
+		{
+			System.arraycopy(prefetchedPredictions[slot], 0, predictions, 0, predictions.length);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns how many times GetPredictions was answered by a prefetch
+	 */
+
+	public int GetPrefetchHits()
+	{
+		return prefetchHits;
+	}
+
+	/**
+	 * Informs the session that the parameter letter is typed. In order to
+	 * give right predictions this method must be called whenever there is a
+	 * new input
+	 */
+
+	public void CharacterTyped(char character)
+	{
+		/* Ignore invalid input */
+
+		if(Trie.ValidCharacter(character) == false)
+		{
+			Logging.Debug("CHARACTER IGNORED");
+			return;
+		}
+
+		word.append(character);
+
+		/* If subTrie is null, then the word being typed is not in the dictionary */
+
+		if(subTrie != null)
+		{
+			subTrie = subTrie.GetSubTrie(character);
+		}
+	}
+
+	/**
+	 * Called when the word being typed is finished, the model learns it
+	 */
+
+	public void WordTyped() throws Exception
+	{
+		if(word.length() == 0)
+		{
+			return;
+		}
+
+		model.Learn(word.toString().toLowerCase());
+
+		word.setLength(0);
+		subTrie = model.GetRoot();
+	}
+
+	/**
+	 * If the user cancels the prediction, this method MUST be called in order
+	 * to inform the prediction infrastructure
+	 */
+
+	public void PredictionCanceled()
+	{
+		word.setLength(0);
+		subTrie = model.GetRoot();
+		idle = true;
+	}
+
+	public void SetNotIdle()
+	{
+		idle = false;
+		word.setLength(0);
+		subTrie = model.GetRoot();
+	}
+
+	public void SetIdle()
+	{
+		word.setLength(0);
+		idle = true;
+	}
+
+	public boolean IsIdle()
+	{
+		return idle;
+	}
+
+	/**
+	 * Continues the word being typed on the current prefix tree of the model,
+	 * after it was replaced
+	 */
+
+	void Continue()
+	{
+		subTrie = model.GetRoot();
+
+		for(int i = 0; i < word.length() && subTrie != null; i++)
+		{
+			subTrie = subTrie.GetSubTrie(word.charAt(i));
+		}
+	}
+
+	/* Returns the slot of the predictions prefetched for a node, or -1 */
+
+	private int Prefetched(Trie node)
+	{
+		/* Prefetched predictions are out of date once the model learns */
+
+		int generation = model.GetGeneration();
+
+		if(generation != prefetchedGeneration)
+		{
+			for(int i = 0; i < PREFETCHED; i++)
+			{
+				prefetchedNodes[i] = null;
+			}
+
+			prefetchedGeneration = generation;
+			return -1;
+		}
+
+		for(int i = 0; i < PREFETCHED; i++)
+		{
+			if(prefetchedNodes[i] == node)
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+}
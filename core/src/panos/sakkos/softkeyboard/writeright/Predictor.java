@@ -0,0 +1,718 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * The class that produces the predictions for the next letter.
+ * A predictor is the model (the prefix tree, whose words keep what was learned about them),
+ * shared by any number of PredictionSessions, which may predict concurrently.
+ * Learning is serialized on the predictor. The predictor has a session of its own,
+ * which its typing methods use, for the keyboard that has one typist
+ * @author Panos Sakkos
+ */
+
+public class Predictor
+{
+    private volatile Trie root;
+    private volatile int wordsTyped;
+
+    public static char[] latinLetters = {
+                            'a','b', 'c', 'd', 'e', 'f', 'g',
+		               	    'h','i', 'j', 'k', 'l', 'm', 'n',
+		             	    'o', 'p', 'q', 'r', 's', 't', 'u',
+		               	    'v', 'w', 'x', 'y', 'z'
+				   			};
+    private int personalizationFactor = 1;
+    private WordStore store;
+
+    /* The bootstrap loads a fifth of the dictionary, but no fewer and no more words than these */
+
+    private static final int BOOTSTRAP_FRACTION = 5;
+    private static final int BOOTSTRAP_MIN_WORDS = 100;
+    private static final int BOOTSTRAP_MAX_WORDS = 2000;
+    
+    /* Words typed before the complete dictionary was published, replayed on Publish */
+
+    private volatile HashMap<String, Integer> typedWhileBootstrapping;
+
+    /* Words typed while bootstrapping that the bootstrap model didn't know. Whether the
+     * store has them is known on Publish, or checked when they are saved before it */
+
+    private HashSet<String> unknownWhileBootstrapping = new HashSet<String>();
+
+    /* Words whose statistics changed since they were last written to the store */
+
+    private HashSet<String> unsaved = new HashSet<String>();
+
+    /* Changes every time the model learns, so sessions know their prefetched predictions are out of date */
+
+    private volatile int generation;
+
+    private PredictionSession session;
+    
+    public Predictor(WordStore store)
+    {
+    	this(store, -1);
+    	typedWhileBootstrapping = null;
+    }
+
+    /**
+     * Creates a predictor that knows only the first bootstrapWords words of the
+     * dictionary, which are the most frequent ones. The rest of the dictionary
+     * can be given later through Publish
+     * @param store The store that holds the dictionary
+     * @param bootstrapWords How many of the most frequent words to load, negative for all
+     */
+
+    public Predictor(WordStore store, int bootstrapWords)
+    {
+    	this.store = store;
+    	
+        wordsTyped = 0;
+
+        if(bootstrapWords < 0)
+        {
+        	/* The whole dictionary comes in ascending order, so every first letter is built
+        	 * in one pass, on as many threads as there are processors */
+        	
+        	final ParallelTrieBuilder builder = new ParallelTrieBuilder();
+        	
+        	store.EnumerateSortedWords(new WordStore.WordVisitor()
+        	{
+        		public void Visit(String word, int prior, int usage, long timestamp)
+        		{
+        			builder.Add(word, prior, usage, timestamp);
+        			wordsTyped += usage;
+        		}
+        	});
+        	
+        	root = builder.Build();
+        	typedWhileBootstrapping = null;
+        }
+        else
+        {
+        	root = new Trie();
+        	final int[] loaded = new int[1];
+        	
+        	store.EnumerateWords(0, bootstrapWords, new WordStore.WordVisitor()
+        	{
+        		public void Visit(String word, int prior, int usage, long timestamp)
+        		{
+        			root.Learn(word, prior, usage, timestamp);
+        			wordsTyped += usage;
+        			loaded[0]++;
+        		}
+        	});
+        	
+        	/* If the whole dictionary fitted in the bootstrap there is nothing to publish later */
+        	
+        	typedWhileBootstrapping = loaded[0] < bootstrapWords ? null : new HashMap<String, Integer>();
+        }
+        
+        session = new PredictionSession(this);
+    }
+    
+    /**
+     * Creates a predictor for the whole dictionary whose prefix tree is read lazily from
+     * an image of the dictionary. If the image is missing or out of date, the prefix tree
+     * is built as usual and the image is written for the next time
+     * @param store The store that holds the dictionary
+     * @param image The file of the image
+     * @param memoryBudget How many bytes the strongly held parts of the prefix tree may take
+     */
+
+    public Predictor(WordStore store, File image, long memoryBudget)
+    {
+    	this.store = store;
+    	
+        wordsTyped = 0;
+        typedWhileBootstrapping = null;
+		
+		LazyTrie lazyRoot = LazyTrie.Open(image, memoryBudget);
+		
+		if(lazyRoot != null && LearnOverImage(lazyRoot) == false)
+		{
+			lazyRoot.Close();
+			lazyRoot = null;
+			wordsTyped = 0;
+		}
+		
+		root = lazyRoot != null ? lazyRoot : BuildImage(image);
+        session = new PredictionSession(this);
+    }
+    
+    /**
+     * Learns what the image of the dictionary doesn't have, in one pass over the store
+     * @return False if the image was not built from the first words of the store
+     */
+
+    private boolean LearnOverImage(final LazyTrie lazyRoot)
+    {
+		final int wordsInImage = lazyRoot.ImageWordCount();
+		final long[] fingerprint = { TrieImageWriter.FINGERPRINT_SEED };
+		final int[] enumerated = new int[1];
+		
+		/* The words that the image doesn't have are learned after the pass, since learning
+		 * them reads subtrees of the image, and the overlay of a subtree is attached when it is read */
+		
+		final ArrayList<String> late = new ArrayList<String>();
+		final ArrayList<Statistics> lateLearned = new ArrayList<Statistics>();
+		
+		store.EnumerateWords(0, -1, new WordStore.WordVisitor()
+		{
+			public void Visit(String word, int prior, int usage, long timestamp)
+			{
+				boolean inImage = enumerated[0]++ < wordsInImage;
+				
+				if(inImage)
+				{
+					fingerprint[0] = TrieImageWriter.Fingerprint(fingerprint[0], word);
+				}
+				
+				if(inImage && LazyTrie.Representable(word))
+				{
+					/* The image has the word and its prior, only what was typed is kept */
+					
+					if(usage > 0)
+					{
+						lazyRoot.Remember(word, new Statistics(usage, timestamp));
+					}
+				}
+				else
+				{
+					late.add(word);
+					lateLearned.add(new Statistics(prior, usage, timestamp));
+				}
+				
+				wordsTyped += usage;
+			}
+		});
+		
+		if(enumerated[0] < wordsInImage || fingerprint[0] != lazyRoot.ImageFingerprint())
+		{
+			return false;
+		}
+		
+		Learn(lazyRoot, late, lateLearned);
+		return true;
+    }
+    
+    /**
+     * Builds the prefix tree of the whole dictionary and writes its image for the next time.
+     * The image keeps the priors only, what was typed is learned after it is written
+     */
+
+    private Trie BuildImage(File image)
+    {
+		final ParallelTrieBuilder builder = new ParallelTrieBuilder();
+		final long[] fingerprint = { TrieImageWriter.FINGERPRINT_SEED };
+		final int[] enumerated = new int[1];
+		final ArrayList<String> late = new ArrayList<String>();
+		final ArrayList<Statistics> lateLearned = new ArrayList<Statistics>();
+		
+		store.EnumerateWords(0, -1, new WordStore.WordVisitor()
+		{
+			public void Visit(String word, int prior, int usage, long timestamp)
+			{
+				fingerprint[0] = TrieImageWriter.Fingerprint(fingerprint[0], word);
+				enumerated[0]++;
+				
+				if(LazyTrie.Representable(word))
+				{
+					builder.Add(word, prior, 0, timestamp);
+					
+					if(usage > 0)
+					{
+						late.add(word);
+						lateLearned.add(new Statistics(usage, timestamp));
+					}
+				}
+				else
+				{
+					late.add(word);
+					lateLearned.add(new Statistics(prior, usage, timestamp));
+				}
+				
+				wordsTyped += usage;
+			}
+		});
+		
+		Trie built = builder.Build();
+		
+		try
+		{
+			LazyTrie.WriteImage(image, built, enumerated[0], fingerprint[0]);
+		}
+		catch(IOException exception)
+		{
+			Logging.Error("WRITE PREFIX TREE IMAGE: FAILED");
+		}
+		
+		Learn(built, late, lateLearned);
+		return built;
+    }
+    
+    private static void Learn(Trie root, ArrayList<String> words, ArrayList<Statistics> learned)
+    {
+		for(int i = 0; i < words.size(); i++)
+		{
+			Statistics statistics = learned.get(i);
+			root.Learn(words.get(i), statistics.GetPrior(), statistics.GetPopularity(), statistics.GetTimestamp());
+		}
+    }
+    
+    /**
+     * Returns how many of the most frequent words to bootstrap a dictionary of the given
+     * size with, so that a small dictionary is loaded in stages too
+     */
+
+    public static int BootstrapWords(int dictionaryWords)
+    {
+    	return Math.max(BOOTSTRAP_MIN_WORDS, Math.min(BOOTSTRAP_MAX_WORDS, dictionaryWords / BOOTSTRAP_FRACTION));
+    }
+
+    /**
+     * Returns if the predictor knows the whole dictionary
+     */
+    
+    public boolean IsComplete()
+    {
+    	return typedWhileBootstrapping == null;
+    }
+    
+    /**
+     * Replaces the bootstrap model with the model of a predictor that was loaded with
+     * the whole dictionary. Whatever was learned in the meantime is replayed on the
+     * new model and the word being typed is continued on it.
+     * Must be called on the thread that types with the session of the predictor,
+     * other sessions continue on the new model from their next word.
+     * @param complete A predictor loaded with the whole dictionary
+     */
+    
+    public synchronized void Publish(Predictor complete)
+    {
+    	if(IsComplete())
+    	{
+    		return;
+    	}
+    	
+    	for(String typedWord : typedWhileBootstrapping.keySet())
+    	{
+    		int times = typedWhileBootstrapping.get(typedWord).intValue();
+    		int words = complete.root.Size();
+
+    		complete.root.Learn(typedWord, times, System.currentTimeMillis());
+    		complete.wordsTyped += times;
+
+    		/* Unknown to the whole dictionary too, unless it was saved in the meantime */
+
+    		if(complete.root.Size() != words && unknownWhileBootstrapping.contains(typedWord))
+    		{
+    			store.AddNewWord(typedWord);
+    	        Logging.Debug("NEW WORD ADDED TO WORDNET");
+    		}
+    	}
+    	
+    	unknownWhileBootstrapping.clear();
+    	
+    	root = complete.root;
+    	wordsTyped = complete.wordsTyped;
+    	typedWhileBootstrapping = null;
+    	generation++;
+    	
+    	/* Continue the current word on the new prefix tree */
+    	
+    	session.Continue();
+    }
+
+    /**
+     * Creates a session that types on the model of this predictor
+     */
+
+    public PredictionSession NewSession()
+    {
+    	return new PredictionSession(this);
+    }
+
+    /**
+     * Returns the session that the typing methods of the predictor use
+     */
+
+    public PredictionSession GetSession()
+    {
+    	return session;
+    }
+    
+    /**
+     * Returns a dictionary containing the probability of each possible next character
+     * @return containing pairs of possible next letter and it's probability to be typed
+     */
+
+    public HashMap<Character, Float> GetPredictions()
+    {
+        float[] probabilities = new float[latinLetters.length];
+        HashMap<Character, Float> predictions = new HashMap<Character, Float>();
+
+        if(GetPredictions(probabilities) == false)
+        {
+            return predictions;
+        }
+
+        for(int i = 0; i < latinLetters.length; i++)
+        {
+            predictions.put(Character.valueOf(latinLetters[i]), Float.valueOf(probabilities[i]));
+        }
+
+        return predictions;
+    }
+
+    /**
+     * Fills the probability of each possible next character, without allocating
+     * @param predictions Receives the probability of latinLetters[i] at i
+     * @return false if there are no predictions, because the word being typed is unknown
+     */
+
+    public boolean GetPredictions(float[] predictions)
+    {
+        return session.GetPredictions(predictions);
+    }
+
+    /**
+     * See PredictionSession.Prefetch
+     */
+
+    public boolean Prefetch(char letter, float[] predictions)
+    {
+        return session.Prefetch(letter, predictions);
+    }
+
+    /**
+     * Returns how many times GetPredictions was answered by a prefetch
+     */
+
+    public int GetPrefetchHits()
+    {
+        return session.GetPrefetchHits();
+    }
+
+    /* Fills the normalized probability of each letter after the given node */
+
+    void Evaluate(Trie node, float[] predictions)
+    {
+        float evaluationSum = 0;
+
+        /* Compute total evaluation amount */
+
+        for(int i = 0; i < latinLetters.length; i++)
+        {
+            predictions[i] = Evaluate(node.GetPopularity(latinLetters[i]), node.GetSubTrieSize(latinLetters[i]));
+            evaluationSum += predictions[i];
+        }
+
+        /* If there are no predictions, every evaluation is zero */
+
+        if(evaluationSum != 0)
+        {
+            for(int i = 0; i < latinLetters.length; i++)
+            {
+                /* Normalize evaluation in order to express probability */
+
+                predictions[i] = (float) Math.round(predictions[i] / evaluationSum * 100) / 100;
+            }
+        }
+    }
+
+    /**
+     * Informs the predictor that the parameter letter is typed. In order to
+     * give right predictions this method must be called whenever  there is a
+     * new input, even if this input is space
+     * @param character
+     */
+
+    public void CharacterTyped(char character) throws Exception
+    {
+        session.CharacterTyped(character);
+    }
+
+    /**
+     * If the user cancels the prediction, this method MUST be called in order
+     * to inform the prediction infrastructure
+     */
+
+    public void PredictionCanceled()
+    {
+        session.PredictionCanceled();
+    }
+
+    /**
+     * This method is called by the CharacterTyped method when the typed
+     * character is space (' '), in order to store the knowledge drained from this action
+     */
+
+    public void WordTyped() throws Exception
+    {
+        session.WordTyped();
+    }
+
+    /**
+     * Learns a word that a session typed, adding it if it is unknown
+     * @param typedWord The word, in lower case
+     */
+
+    synchronized void Learn(String typedWord) throws Exception
+    {
+        int words = root.Size();
+
+        /* Train the Trie with the new knowledge, a single descent finds or adds the word */
+
+        root.Learn(typedWord, 1, System.currentTimeMillis());
+
+        /* If the word was unknown, add it to wordnet */
+
+        if(root.Size() != words)
+        {
+            AddTypedWordToWordNet(typedWord);
+        }
+
+        wordsTyped++;
+        unsaved.add(typedWord);
+        generation++;
+        RememberTypedWhileBootstrapping(typedWord, 1);
+    }
+
+    Trie GetRoot()
+    {
+    	return root;
+    }
+
+    int GetGeneration()
+    {
+    	return generation;
+    }
+
+    /* Entries of the sets that track what was learned, besides the prefix tree */
+
+    int GetBookkeepingEntries()
+    {
+    	HashMap<String, Integer> bootstrapping = typedWhileBootstrapping;
+
+    	return unsaved.size() + unknownWhileBootstrapping.size() + (bootstrapping == null ? 0 : bootstrapping.size());
+    }
+
+    private void RememberTypedWhileBootstrapping(String typedWord, int times)
+    {
+    	if(IsComplete())
+    	{
+    		return;
+    	}
+    	
+    	Integer typed = typedWhileBootstrapping.get(typedWord);
+    	typedWhileBootstrapping.put(typedWord, typed == null ? times : typed.intValue() + times);
+    }
+
+
+    /**
+     * Given the popularity of a possible next letter and the number of the
+     * postfixes that start with this letter, returns an evaluation
+     * @param popularity Indicates the popularity of the possible next letter
+     * @param prefixesCounter Indicates the number of the postfixes that start
+     * with the target possible next letter
+     * @return Evaluation for the target possible next letter
+     */
+
+    private float Evaluate(int popularity, int prefixesCounter)
+    {
+        float usageRatio = personalizationFactor * wordsTyped / root.Size();
+
+        /* If there are more typed words than the stored words (usageRatio > 1 ),
+        * the evaluation is computed based only on letter's popularity
+        */
+
+        if (usageRatio > 1)
+        {
+            usageRatio = 1;
+        }
+
+        return usageRatio * popularity + (1 - usageRatio) * prefixesCounter;
+    }
+
+    private void AddTypedWordToWordNet(String typedWord) throws Exception
+    {
+    	/* While bootstrapping, an unknown word may just not be loaded yet */
+    	
+    	if(IsComplete() == false)
+    	{
+    		unknownWhileBootstrapping.add(typedWord);
+    		return;
+    	}
+    	
+    	store.AddNewWord(typedWord);
+        Logging.Debug("NEW WORD ADDED TO WORDNET");        	
+    }
+
+    private void AddNewWordToWordNet(String newWord) throws Exception
+    {
+    	if(IsComplete() == false)
+    	{
+    		unknownWhileBootstrapping.add(newWord);
+    		return;
+    	}
+
+    	store.AddNewWord(newWord);
+        Logging.Debug("NEW WORD ADDED TO WORDNET");        	
+    }
+
+    /* Adds the words typed while bootstrapping that the store doesn't have, so they can be saved */
+
+    private void AddUnknownWordsToWordNet()
+    {
+    	for(String unknownWord : unknownWhileBootstrapping)
+    	{
+    		if(store.ContainsWord(unknownWord) == false)
+    		{
+    			store.AddNewWord(unknownWord);
+    	        Logging.Debug("NEW WORD ADDED TO WORDNET");
+    		}
+    	}
+
+    	unknownWhileBootstrapping.clear();
+    }
+
+    /**
+     * Writes to the store every word that was typed, the priors of the dictionary are never
+     * written. See Flush, which writes only what was learned since the last Save or Flush
+     */
+
+    public synchronized void Save()
+    {
+        AddUnknownWordsToWordNet();
+
+        root.EnumerateLearned(new Trie.RecordVisitor()
+        {
+        	public void Visit(String word, Statistics statistics)
+        	{
+        		store.UpdateWords(word, statistics);
+        	}
+        });
+        
+        unsaved.clear();
+        store.Flush();
+    }
+
+    /**
+     * Writes to the store only what was learned since the last Save or Flush
+     * @return How many words were written
+     */
+
+    public synchronized int Flush()
+    {
+    	int flushed = 0;
+
+    	AddUnknownWordsToWordNet();
+
+    	for(String typedWord : unsaved)
+    	{
+    		Statistics statistics = root.GetRecord(typedWord);
+
+    		if(statistics != null && statistics.GetPopularity() > 0)
+    		{
+    			store.UpdateWords(typedWord, statistics);
+    			flushed++;
+    		}
+    	}
+
+    	unsaved.clear();
+    	store.Flush();
+
+    	return flushed;
+    }
+
+    /**
+     * Drops the parts of the prefix tree that are read again when they are needed,
+     * only a prefix tree read from an image has any, see LazyTrie.Shed
+     * @return Roughly how many bytes were released
+     */
+
+    public synchronized long ShedCaches()
+    {
+    	generation++;
+    	return root instanceof LazyTrie ? ((LazyTrie) root).Shed() : 0;
+    }
+
+    /**
+     * Drops every part of the prefix tree that was read from an image, see LazyTrie.Compact
+     * @return Roughly how many bytes were reclaimed
+     */
+
+    public synchronized long Compact()
+    {
+    	return root instanceof LazyTrie ? ((LazyTrie) root).Compact() : 0;
+    }
+    
+    public void SetNotIdle()
+    {
+    	session.SetNotIdle();
+    }
+    
+    public void SetIdle()
+    {
+    	session.SetIdle();
+    }
+    
+    public boolean IsIdle()
+    {
+    	return session.IsIdle();
+    }
+    
+    public synchronized void LearnNewWord(String newWord)
+    {    	
+        newWord = newWord.toLowerCase();
+
+        /* prevent bad use */
+
+        boolean known = root.GetRecord(newWord) != null;
+
+        root.Learn(newWord, 1, System.currentTimeMillis());
+        wordsTyped++;
+        unsaved.add(newWord);
+        generation++;
+        RememberTypedWhileBootstrapping(newWord, 1);
+
+        if(known)
+        {
+        	return;
+        }
+
+        try 
+        {
+			AddNewWordToWordNet(newWord);
+		}
+        catch (Exception e) 
+        {
+        	Logging.Debug("ERROR WHILE ADDING NEW WORD TO WORDNET AFTER PREDICTION CANCELLING");
+		}
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.util.ArrayList;
+
+/**
+ * Builds a prefix tree from words in ascending order. The path of the previous word is
+ * kept on a stack, so a word only creates the nodes past the prefix it shares with the
+ * previous one, and the size and popularity of a node are set once, when the words
+ * leave its subtree. The whole prefix tree is built in time linear to the characters
+ * of the words, and comes out the same as learning every word with Trie.Learn.
+ * A word that comes out of order is learned after the rest, the usual way
+ * @author Panos Sakkos
+ */
+
+public class SortedTrieBuilder
+{
+	private Trie root = new Trie();
+
+	/* The path of the previous word: its letters, its nodes and, for every node, the
+	 * words that end at it or below it and their prior and usage, added so far */
+
+	private char[] previous = new char[32];
+	private Trie[] path = new Trie[33];
+	private int[] words = new int[33];
+	private int[] popularities = new int[33];
+	private int depth = 0;
+
+	/* Words that came out of order */
+
+	private ArrayList<String> late = new ArrayList<String>();
+	private ArrayList<Statistics> lateLearned = new ArrayList<Statistics>();
+
+	public SortedTrieBuilder()
+	{
+		path[0] = root;
+	}
+
+	/**
+	 * Adds the next word, adding the same word again adds its usage
+	 * @param word Should not come before the previous word, compared in lower case
+	 * @param usage How many times the word was typed
+	 * @param timestamp When the word was last typed
+	 */
+
+	public void Add(String word, int usage, long timestamp)
+	{
+		Add(word, 0, usage, timestamp);
+	}
+
+	/**
+	 * Adds the next word of the dictionary with the popularity that the dictionary gives it
+	 * @param prior The popularity of the word in the dictionary, see Statistics.GetPrior
+	 */
+
+	public void Add(String word, int prior, int usage, long timestamp)
+	{
+		assert Trie.ValidWord(word);
+
+		/* Ignore capitals */
+
+		Add(word.toLowerCase(), 0, prior, usage, timestamp);
+	}
+
+	/**
+	 * Adds the part of a word in lower case from the given index on, used to build the
+	 * subtree of a first letter without copying the words, see ParallelTrieBuilder
+	 */
+
+	void Add(String word, int start, int prior, int usage, long timestamp)
+	{
+		int length = word.length() - start;
+
+		int shared = 0;
+		while(shared < depth && shared < length && previous[shared] == word.charAt(start + shared))
+		{
+			shared++;
+		}
+
+		boolean ordered = shared == length ? shared == depth : shared == depth || word.charAt(start + shared) > previous[shared];
+
+		if(ordered == false)
+		{
+			late.add(word.substring(start));
+			lateLearned.add(new Statistics(prior, usage, timestamp));
+			return;
+		}
+
+		while(depth > shared)
+		{
+			Pop();
+		}
+
+		Grow(length);
+
+		for(int i = shared; i < length; i++)
+		{
+			Trie node = new Trie();
+			char letter = word.charAt(start + i);
+
+			path[depth].SetSubTrie(letter, node);
+			previous[depth] = letter;
+
+			depth++;
+			path[depth] = node;
+			words[depth] = 0;
+			popularities[depth] = 0;
+		}
+
+		Statistics record = path[depth].GetRecord();
+
+		if(record == null)
+		{
+			path[depth].SetRecord(new Statistics(prior, usage, timestamp));
+			words[depth]++;
+		}
+		else
+		{
+			record.AddPrior(prior);
+			record.WordTyped(usage, timestamp);
+		}
+
+		popularities[depth] += prior + usage;
+	}
+
+	/**
+	 * Finishes the counts of the nodes on the path and returns the prefix tree, the
+	 * builder can't be used after it
+	 */
+
+	public Trie Build()
+	{
+		while(depth > 0)
+		{
+			Pop();
+		}
+
+		Finish(0);
+
+		for(int i = 0; i < late.size(); i++)
+		{
+			Statistics learned = lateLearned.get(i);
+
+			root.Learn(late.get(i), learned.GetPrior(), learned.GetPopularity(), learned.GetTimestamp());
+		}
+
+		return root;
+	}
+
+	/* The words of the node on the top of the stack are all added, it is done */
+
+	private void Pop()
+	{
+		Finish(depth);
+
+		words[depth - 1] += words[depth];
+		popularities[depth - 1] += popularities[depth];
+		depth--;
+	}
+
+	/* Same counts as Trie.Learn gives: the size counts the words that pass through the node */
+
+	private void Finish(int level)
+	{
+		Trie node = path[level];
+		int ending = node.GetRecord() == null ? 0 : 1;
+
+		node.SetCounts(1 + words[level] - ending, popularities[level]);
+	}
+
+	private void Grow(int length)
+	{
+		if(length < previous.length)
+		{
+			return;
+		}
+
+		int capacity = Math.max(length + 1, previous.length * 2);
+		char[] grownPrevious = new char[capacity];
+		Trie[] grownPath = new Trie[capacity + 1];
+		int[] grownWords = new int[capacity + 1];
+		int[] grownPopularities = new int[capacity + 1];
+
+		System.arraycopy(previous, 0, grownPrevious, 0, previous.length);
+		System.arraycopy(path, 0, grownPath, 0, path.length);
+		System.arraycopy(words, 0, grownWords, 0, words.length);
+		System.arraycopy(popularities, 0, grownPopularities, 0, popularities.length);
+
+		previous = grownPrevious;
+		path = grownPath;
+		words = grownWords;
+		popularities = grownPopularities;
+	}
+}
@@ -30,6 +30,10 @@ public class Statistics
     private int usage;
     private long timestamp;
 
+    /* The popularity that the dictionary gives the word, kept apart from its usage */
+
+    private int prior;
+
     public Statistics()
     {
         this.usage = 1;
@@ -48,6 +52,12 @@ public class Statistics
     	this.usage = usage;
     	this.timestamp = timestamp;
     }
+
+    public Statistics(int prior, int usage, long timestamp)
+    {
+    	this(usage, timestamp);
+    	this.prior = prior;
+    }
     
     /**
      * This method must be called when the word that the Statistics instance belongs is typed
@@ -59,6 +69,17 @@ public class Statistics
         timestamp = System.currentTimeMillis();
     }
 
+    /**
+     * Adds how many times the word was typed
+     * @param timestamp When the word was last typed
+     */
+
+    public void WordTyped(int times, long timestamp)
+    {
+        usage += times;
+        this.timestamp = timestamp;
+    }
+
     /**
      * Returns how many times the word was typed
      */
@@ -67,6 +88,23 @@ public class Statistics
     {
         return usage;
     }
+
+    /**
+     * Returns the popularity that the dictionary gives the word. It trains the prefix
+     * tree like the usage does, but the word was not typed for it and it is never saved
+     */
+
+    public int GetPrior()
+    {
+        return prior;
+    }
+
+    /* A word that the dictionary has twice gets the prior of both */
+
+    void AddPrior(int prior)
+    {
+        this.prior += prior;
+    }
     
     public long GetTimestamp()
     {
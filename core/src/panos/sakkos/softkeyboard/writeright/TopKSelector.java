@@ -0,0 +1,114 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+/**
+ * Selects the probable next letters out of the predictions, without allocating.
+ * Letters are represented as a mask, bit i stands for Predictor.latinLetters[i]
+ * @author Panos Sakkos
+ */
+
+public class TopKSelector
+{
+	public static final int LETTERS = 26;
+	public static final int ALL_LETTERS = (1 << LETTERS) - 1;
+
+	/* The largest distinct probabilities seen so far, in descending order */
+
+	private float[] top = new float[LETTERS + 1];
+
+	/**
+	 * Returns the letters whose probability is one of the k + 1 largest distinct
+	 * non zero probabilities, or 0 if every probability is zero
+	 * @param predictions The probability of every latin letter
+	 * @param k How aggressive the selection is
+	 */
+
+	public int Select(float[] predictions, int k)
+	{
+		int wanted = Math.min(k + 1, LETTERS);
+		int count = 0;
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			float probability = predictions[letter];
+
+			if(probability <= 0 || (count == wanted && probability <= top[count - 1]))
+			{
+				continue;
+			}
+
+			/* Insertion into the descending top values, ignoring duplicates */
+
+			int i = count;
+			while(i > 0 && top[i - 1] < probability)
+			{
+				i--;
+			}
+
+			if(i > 0 && top[i - 1] == probability)
+			{
+				continue;
+			}
+
+			int last = count < wanted ? count : count - 1;
+			for(int j = last; j > i; j--)
+			{
+				top[j] = top[j - 1];
+			}
+
+			top[i] = probability;
+
+			if(count < wanted)
+			{
+				count++;
+			}
+		}
+
+		if(count == 0)
+		{
+			return 0;
+		}
+
+		float threshold = top[count - 1];
+		int mask = 0;
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			if(predictions[letter] >= threshold)
+			{
+				mask |= 1 << letter;
+			}
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Returns the bit of a letter, or 0 if it is not a latin letter
+	 */
+
+	public static int LetterBit(char letter)
+	{
+		letter = Character.toLowerCase(letter);
+
+		return letter >= 'a' && letter <= 'z' ? 1 << (letter - 'a') : 0;
+	}
+}
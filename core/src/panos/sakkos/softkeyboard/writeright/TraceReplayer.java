@@ -0,0 +1,394 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+/**
+ * Replays a KeystrokeTrace against a predictor without a device, making the decisions
+ * the keyboard makes on every event (what is typed, deleted, canceled and learned, and
+ * how aggressive the keyboard gets), so a trace recorded on a phone reproduces its
+ * latencies and what was learned. The editor is rebuilt from the keys and the cursor
+ * updates; text that was in a field before it was focused is seen as blanks.
+ * Unlike the keyboard, which resizes once per frame, the replay resizes on every key
+ * @author Panos Sakkos
+ */
+
+public class TraceReplayer
+{
+	/* Key codes of android.inputmethodservice.Keyboard */
+
+	public static final int KEYCODE_DELETE = -5;
+
+	private static final char NO_INPUT = 0;
+
+	/* As much text before the cursor as the keyboard reads, see EditorMirror */
+
+	private static final int WINDOW = 100;
+
+	private static final int MAX_K = 26;
+	private static final int AGGRESIVE_THRESHOLD = 5;
+
+	private Predictor predictor;
+	private LatencyStats stats;
+	private TopKSelector topKSelector = new TopKSelector();
+	private float[] predictions = new float[Predictor.latinLetters.length];
+
+	private String separators;
+	private int k;
+	private int continuousSuccesses;
+
+	/* The editor and the state of the keyboard */
+
+	private StringBuilder text = new StringBuilder();
+	private int cursor;
+	private boolean predictionOn;
+	private boolean predictionFriendly;
+	private boolean predictionCanceled;
+
+	/**
+	 * @param predictor The predictor to replay against, loaded with the dictionary of the device
+	 * @param stats Receives the latency of every stage, as the keyboard records it
+	 */
+
+	public TraceReplayer(Predictor predictor, LatencyStats stats)
+	{
+		this.predictor = predictor;
+		this.stats = stats;
+	}
+
+	/**
+	 * Replays every event of the trace and returns how long each one took, in nanoseconds
+	 */
+
+	public long[] Replay(KeystrokeTrace trace)
+	{
+		separators = trace.GetSeparators();
+		k = trace.GetK();
+		continuousSuccesses = trace.GetContinuousSuccesses();
+
+		/* Recording starts while typing in a field that allows predictions */
+
+		text.setLength(0);
+		cursor = 0;
+		predictionOn = true;
+		predictionFriendly = true;
+		predictionCanceled = false;
+
+		long[] durations = new long[trace.GetCount()];
+
+		for(int i = 0; i < durations.length; i++)
+		{
+			long start = System.nanoTime();
+			Replay(trace.GetType(i), trace.GetFirst(i), trace.GetSecond(i));
+			durations[i] = System.nanoTime() - start;
+		}
+
+		return durations;
+	}
+
+	public int GetK()
+	{
+		return k;
+	}
+
+	public int GetContinuousSuccesses()
+	{
+		return continuousSuccesses;
+	}
+
+	private void Replay(int type, int first, int second)
+	{
+		switch(type)
+		{
+			case KeystrokeTrace.KEY:
+				KeyPressed(first, second == 1);
+				break;
+
+			case KeystrokeTrace.RELEASE:
+				KeyReleased(first);
+				break;
+
+			case KeystrokeTrace.SWIPE_UP:
+			case KeystrokeTrace.SWIPE_LEFT:
+			case KeystrokeTrace.SWIPE_RIGHT:
+				CancelPrediction();
+				break;
+
+			case KeystrokeTrace.SELECTION:
+				SelectionUpdated(first, second);
+				break;
+
+			case KeystrokeTrace.START_INPUT:
+				text.setLength(0);
+				Pad(first);
+				cursor = text.length();
+				predictionOn = (second & KeystrokeTrace.PREDICTION_ON) != 0;
+				predictionFriendly = (second & KeystrokeTrace.PREDICTION_FRIENDLY) != 0;
+				break;
+
+			case KeystrokeTrace.FINISH_INPUT:
+				text.setLength(0);
+				cursor = 0;
+				WordSeparatorTyped();
+				break;
+
+			/* Closing the keyboard doesn't reach the predictor */
+
+			default:
+				break;
+		}
+	}
+
+	/* What SoftKeyboard.onKey does to the editor */
+
+	private void KeyPressed(int code, boolean shifted)
+	{
+		if(IsSeparator(code))
+		{
+			Insert((char) code);
+		}
+		else if(code == KEYCODE_DELETE)
+		{
+			if(cursor > 0)
+			{
+				text.deleteCharAt(--cursor);
+			}
+		}
+		else if(code >= 0)
+		{
+			Insert(shifted ? Character.toUpperCase((char) code) : (char) code);
+		}
+	}
+
+	/* SoftKeyboard.onRelease */
+
+	private void KeyReleased(int code)
+	{
+		if(predictionOn == false)
+		{
+			return;
+		}
+
+		if(code == KEYCODE_DELETE)
+		{
+			DeleteTyped();
+		}
+
+		if(IsSeparator(code))
+		{
+			WordSeparatorTyped();
+		}
+		else if(Character.isLetter(code))
+		{
+			CharacterTyped((char) code);
+		}
+	}
+
+	/* SoftKeyboard.onUpdateSelection */
+
+	private void SelectionUpdated(int selectionStart, int selectionEnd)
+	{
+		Pad(selectionEnd);
+		cursor = Math.max(0, selectionEnd);
+
+		if(predictionFriendly == false)
+		{
+			return;
+		}
+
+		boolean atTheEnd = cursor == text.length();
+		boolean afterSeparator = IsSeparator(CharacterBeforeCursor());
+
+		if(atTheEnd == false && afterSeparator == false)
+		{
+			predictionOn = false;
+			predictor.SetIdle();
+		}
+		else if(atTheEnd && afterSeparator)
+		{
+			predictionOn = true;
+			predictor.SetNotIdle();
+		}
+	}
+
+	private void DeleteTyped()
+	{
+		char lastCharacter = CharacterBeforeCursor();
+
+		if(IsSeparator(lastCharacter) || lastCharacter == NO_INPUT)
+		{
+			predictor.SetNotIdle();
+		}
+		else if(LastWordBeforeCursor().length() > 0)
+		{
+			String lastWord = LastWordBeforeCursor();
+			long start = LatencyStats.Start();
+
+			predictor.SetIdle(); predictor.SetNotIdle();
+			for(int i = 0; i < lastWord.length(); i++)
+			{
+				try
+				{
+					predictor.CharacterTyped(lastWord.charAt(i));
+				}
+				catch(Exception ex)
+				{
+					Logging.Debug("REPLAY: PREDICTOR.CHARACTER_TYPED: FAILED");
+				}
+			}
+			stats.Record(LatencyStats.PREDICTOR_UPDATE, start);
+
+			Resize();
+		}
+		else
+		{
+			predictor.SetIdle();
+		}
+	}
+
+	private void CharacterTyped(char character)
+	{
+		long start = LatencyStats.Start();
+		try
+		{
+			predictor.CharacterTyped(character);
+		}
+		catch(Exception e)
+		{
+			Logging.Debug("REPLAY: PREDICTOR.CHARACTER_TYPED: FAILED");
+		}
+		stats.Record(LatencyStats.PREDICTOR_UPDATE, start);
+
+		Resize();
+	}
+
+	/* SoftKeyboard.ResizeForPredictions and the selection of TopKResize */
+
+	private void Resize()
+	{
+		long start = LatencyStats.Start();
+		boolean predicted = predictor.GetPredictions(predictions);
+		stats.Record(LatencyStats.PREDICTION, start);
+
+		if(predicted)
+		{
+			stats.Count(LatencyStats.PREDICTIONS_SERVED);
+
+			start = LatencyStats.Start();
+			topKSelector.Select(predictions, k);
+			stats.Record(LatencyStats.SELECTION, start);
+		}
+	}
+
+	private void WordSeparatorTyped()
+	{
+		if(predictionCanceled)
+		{
+			predictor.LearnNewWord(LastWordBeforeCursor());
+			predictionCanceled = false;
+		}
+		else
+		{
+			continuousSuccesses++;
+
+			if(continuousSuccesses == AGGRESIVE_THRESHOLD)
+			{
+				continuousSuccesses = 0;
+
+				if(k > 1)
+				{
+					k--;
+					stats.Count(LatencyStats.K_CHANGES);
+				}
+			}
+		}
+
+		try
+		{
+			predictor.WordTyped();
+		}
+		catch(Exception e)
+		{
+			Logging.Debug("REPLAY: PREDICTOR.WORD_TYPED: FAILED");
+		}
+	}
+
+	private void CancelPrediction()
+	{
+		predictionCanceled = true;
+		stats.Count(LatencyStats.CANCELLATIONS);
+		predictor.PredictionCanceled();
+
+		if(k < MAX_K)
+		{
+			k++;
+			stats.Count(LatencyStats.K_CHANGES);
+		}
+
+		continuousSuccesses = 0;
+	}
+
+	private void Insert(char character)
+	{
+		text.insert(cursor++, character);
+	}
+
+	/* Fills the text the trace doesn't know about with blanks, up to length */
+
+	private void Pad(int length)
+	{
+		while(text.length() < length)
+		{
+			text.append(' ');
+		}
+	}
+
+	private char CharacterBeforeCursor()
+	{
+		return cursor == 0 ? NO_INPUT : text.charAt(cursor - 1);
+	}
+
+	/* SoftKeyboard.GetLastWordBeforeCursor */
+
+	private String LastWordBeforeCursor()
+	{
+		CharSequence input = text.subSequence(Math.max(0, cursor - WINDOW), cursor);
+
+		if(input.length() == 0)
+		{
+			return null;
+		}
+
+		int lastSeparatorIndex = 0;
+		for(int i = 0; i < input.length() - 1; i++)
+		{
+			if(IsSeparator(input.charAt(i)))
+			{
+				lastSeparatorIndex = i;
+			}
+		}
+
+		return input.subSequence(lastSeparatorIndex, input.length()).toString().trim();
+	}
+
+	private boolean IsSeparator(int code)
+	{
+		return code > 0 && separators.indexOf(code) >= 0;
+	}
+}
@@ -0,0 +1,479 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+/**
+ * Implementation of a trainable prefix tree.
+ * The node where a word ends keeps the record of the word (how many times it was typed
+ * and when), so a word is learned and looked up with a single descent.
+ * The subtrees of a node are kept in an array of the exact size, which is replaced
+ * instead of changed when a subtree is added, so the prefix tree can be read by any
+ * number of threads while one thread adds to it. The counts that a reader sees may
+ * lag behind the word that is being added
+ * @author Panos Sakkos
+ */
+
+public class Trie
+{
+    private static final Trie[] NO_SUBTRIES = new Trie[0];
+
+    private int size;
+    private int popularity;
+
+    /* The letter of this node in the subtrees of its parent */
+
+    private char letter;
+    private volatile Trie[] subTries = NO_SUBTRIES;
+
+    /* Not null if a word ends at this node */
+
+    private Statistics record;
+
+    /* Characters that are not allowed in words, besides digits */
+
+    private static final String INVALID_CHARACTERS = "'.-_/()";
+
+    /**
+     * Called for every word of the prefix tree, see EnumerateLearned
+     */
+
+    public interface RecordVisitor
+    {
+        void Visit(String word, Statistics record);
+    }
+
+    public Trie()
+    {
+        size = 1;
+        popularity = 0;
+    }
+
+    /**
+     * Creates a node with known size and popularity, used when reading a prefix tree image
+     * @param terminal If a word ends at this node, its record is empty until it is learned
+     */
+
+    Trie(int size, int popularity, boolean terminal)
+    {
+        this();
+
+        this.size = size;
+        this.popularity = popularity;
+
+        if(terminal)
+        {
+            record = new Statistics(0, 0);
+        }
+    }
+
+    /**
+     * Adds an new word in the prefix tree, adding a word that is already in it changes nothing
+     * @param word The word that will be inserted
+     * @return The record of the word
+     */
+
+    public Statistics Add(String word)
+    {
+        Statistics existing = GetRecord(word);
+
+        return existing != null ? existing : Learn(word, 0, System.currentTimeMillis());
+    }
+
+    /**
+     * Informs the prefix tree that the given word was typed and how many times, adding the
+     * word if it is not in the prefix tree yet
+     * @param word The word that was typed
+     * @param times How many times the word was typed
+     * @param timestamp When the word was last typed
+     * @return The record of the word
+     */
+
+    public Statistics Learn(String word, int times, long timestamp)
+    {
+        return Learn(word, 0, times, timestamp);
+    }
+
+    /**
+     * Learns a word of the dictionary with the popularity that the dictionary gives it,
+     * see Statistics.GetPrior
+     * @param prior The popularity of the word in the dictionary, trains the path of the word
+     * but is not counted as typed
+     * @return The record of the word
+     */
+
+    public Statistics Learn(String word, int prior, int times, long timestamp)
+    {
+        /* The word must be valid, because it's loaded from the Clean Wordnet file */
+
+        assert ValidWord(word);
+
+        /*Ignore capitals */
+
+        word = word.toLowerCase();
+
+        Trie terminal = Descend(word, prior + times);
+
+        if(terminal.record == null)
+        {
+            terminal.record = new Statistics(0, timestamp);
+            Grow(word);
+        }
+
+        terminal.record.AddPrior(prior);
+        terminal.record.WordTyped(times, timestamp);
+
+        return terminal.record;
+    }
+
+    /**
+     * Returns the record of a word, or null if the word is not in the prefix tree
+     */
+
+    public Statistics GetRecord(String word)
+    {
+        /* Ignore case sensitivity */
+
+        word = word.toLowerCase();
+
+        Trie node = this;
+
+        for(int i = 0; i < word.length() && node != null; i++)
+        {
+            node = node.Child(word.charAt(i));
+        }
+
+        return node == null ? null : node.record;
+    }
+
+    /**
+     * Visits the words that were typed at least once, in no particular order
+     */
+
+    public void EnumerateLearned(RecordVisitor visitor)
+    {
+        EnumerateLearned(new StringBuilder(), visitor);
+    }
+
+    /**
+     * Clears the prefix tree from any added words and information
+     */
+
+    public void Clear()
+    {
+        subTries = NO_SUBTRIES;
+        record = null;
+    }
+
+    /**
+     * Returns the size of the prefix subtree with root the given parameter letter
+     * @param letter The char that indicates the target prefix subtree
+     * @return
+     */
+
+    public int GetSubTrieSize(char letter)
+    {
+        /* Ignore case sensitivity */
+
+        letter = Character.toLowerCase(letter);
+
+        Trie subTrie = Child(letter);
+
+        return subTrie == null ? 0 : subTrie.Size();
+    }
+
+    /**
+     * Returns the number of the words that the prefix tree contains
+     * @return
+     */
+    
+    public int Size()
+    {
+        return size;
+    }
+
+    /**
+     * Informs the prefix tree that the given word was typed in the past and how many times
+     * @param word The word that was typed
+     * @param times How many times the word was typed
+     */
+
+     public void WasTyped(String word, int times)
+     {
+        Learn(word, times, System.currentTimeMillis());
+     }
+
+     /**
+      * Returns the prefix tree with root the character given as parameter
+      * @param characterTyped Indicates the target prefix subtree
+      * @return The prefix subtree that was indicated
+      */
+
+     public Trie GetSubTrie(char characterTyped)
+     {
+        /* Ignore case sensitivity */
+
+         characterTyped = Character.toLowerCase(characterTyped);
+
+         return Child(characterTyped);
+     }
+
+     public int GetPopularity(char nextLetter)
+     {
+        /* Ignore case sensitivity */
+
+        nextLetter = Character.toLowerCase(nextLetter);
+
+        Trie subTrie = Child(nextLetter);
+
+        return subTrie != null ? subTrie.GetPopularity() : 0;
+     }
+
+    /**
+     * Searches the prefix tree for the given word
+     * @param word The word to be searched
+     * @return If the word was added, prefixes of words are not found
+     */
+
+    public boolean Search(String word)
+    {
+        return GetRecord(word) != null;
+    }
+
+    /**
+     * Sets the record of a word that was learned elsewhere, used when replaying what was
+     * learned on a subtree read from an image. The prior and the usage of the record train
+     * the path
+     * @return If the word was not in the prefix tree
+     */
+
+    boolean Attach(String word, Statistics learned)
+    {
+        Trie terminal = Descend(word, learned.GetPrior() + learned.GetPopularity());
+        boolean added = terminal.record == null;
+
+        terminal.record = learned;
+
+        if(added)
+        {
+            Grow(word);
+        }
+
+        return added;
+    }
+
+    /**
+     * Walks down the path of a word, creating the nodes that are missing, and adds the
+     * times it was typed to the popularity of every node of the path
+     * @return The node where the word ends
+     */
+
+    private Trie Descend(String word, int times)
+    {
+        Trie node = this;
+        node.popularity += times;
+
+        for(int i = 0; i < word.length(); i++)
+        {
+            char character = word.charAt(i);
+            Trie next = node.Child(character);
+
+            if(next == null)
+            {
+                next = new Trie();
+                node.SetSubTrie(character, next);
+            }
+
+            next.popularity += times;
+            node = next;
+        }
+
+        return node;
+    }
+
+    /* Counts a new word in every node that it passes through */
+
+    private void Grow(String word)
+    {
+        Trie node = this;
+
+        for(int i = 0; i < word.length(); i++)
+        {
+            node.size++;
+            node = node.Child(word.charAt(i));
+        }
+    }
+
+    private void EnumerateLearned(StringBuilder word, RecordVisitor visitor)
+    {
+        if(record != null && record.GetPopularity() > 0)
+        {
+            visitor.Visit(word.toString(), record);
+        }
+
+        Trie[] current = subTries;
+
+        for(int i = 0; i < current.length; i++)
+        {
+            word.append(current[i].letter);
+            current[i].EnumerateLearned(word, visitor);
+            word.setLength(word.length() - 1);
+        }
+    }
+
+    void SetSubTrie(char letter, Trie subTrie)
+    {
+        Trie[] current = subTries;
+        subTrie.letter = letter;
+
+        for(int i = 0; i < current.length; i++)
+        {
+            if(current[i].letter == letter)
+            {
+                Trie[] replaced = current.clone();
+                replaced[i] = subTrie;
+                subTries = replaced;
+                return;
+            }
+        }
+
+        Trie[] grown = new Trie[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = subTrie;
+        subTries = grown;
+    }
+
+
+    /**
+     * Returns the subtrees of this node that are in memory, see ModelFootprint
+     */
+
+    Trie[] SubTries()
+    {
+        return subTries;
+    }
+
+    private Trie Child(char letter)
+    {
+        Trie[] current = subTries;
+
+        for(int i = 0; i < current.length; i++)
+        {
+            if(current[i].letter == letter)
+            {
+                return current[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the popularity of this node
+     * @return
+     */
+
+    int GetPopularity()
+    {
+        return popularity;
+    }
+
+    /**
+     * Returns the letter of this node in the subtrees of its parent
+     */
+
+    char GetLetter()
+    {
+        return letter;
+    }
+
+    /**
+     * Returns the record of the word that ends at this node, or null, see ModelFootprint
+     */
+
+    Statistics GetRecord()
+    {
+        return record;
+    }
+
+    /**
+     * Sets the counts of a node that was built bottom up, see SortedTrieBuilder
+     */
+
+    void SetCounts(int size, int popularity)
+    {
+        this.size = size;
+        this.popularity = popularity;
+    }
+
+    void SetRecord(Statistics record)
+    {
+        this.record = record;
+    }
+
+    /**
+     * Returns if a character can be part of a word, the same check as ValidWord
+     * without allocating a string
+     */
+
+    public static boolean ValidCharacter(char character)
+    {
+        return (character < '0' || character > '9') && INVALID_CHARACTERS.indexOf(character) < 0;
+    }
+
+    public static boolean ValidWord(String word)
+    {
+        if (word.contains("0"))
+            return false;
+        if (word.contains("1"))
+            return false;
+        if (word.contains("2"))
+            return false;
+        if (word.contains("3"))
+            return false;
+        if (word.contains("4"))
+            return false;
+        if (word.contains("5"))
+            return false;
+        if (word.contains("6"))
+            return false;
+        if (word.contains("7"))
+            return false;
+        if (word.contains("8"))
+            return false;
+        if (word.contains("9"))
+            return false;
+        if (word.contains("'"))
+            return false;
+        if (word.contains("."))
+            return false;
+        if (word.contains("-"))
+            return false;
+        if (word.contains("_"))
+            return false;
+        if (word.contains("/"))
+            return false;
+        if (word.contains("("))
+            return false;
+        if (word.contains(")"))
+            return false;
+
+        return true;
+    }
+}
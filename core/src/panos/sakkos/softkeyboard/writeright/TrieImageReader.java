@@ -0,0 +1,227 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads the first letter subtrees of a prefix tree image, one at a time.
+ * See TrieImageWriter for the format
+ * @author Panos Sakkos
+ */
+
+public class TrieImageReader
+{
+	private static final int LETTERS = TrieImageWriter.LETTERS;
+
+	private RandomAccessFile file;
+
+	private int wordCount;
+	private long fingerprint;
+	private int rootSize;
+	private int rootPopularity;
+
+	private int[] sizes = new int[LETTERS];
+	private int[] popularities = new int[LETTERS];
+	private int[] offsets = new int[LETTERS];
+	private int[] lengths = new int[LETTERS];
+
+	/* Decoding state of the section being read */
+
+	private byte[] section;
+	private int position;
+	private int nodes;
+
+	/**
+	 * Opens an image and reads its header
+	 * @throws IOException If the file is not a prefix tree image of this version
+	 */
+
+	public TrieImageReader(File image) throws IOException
+	{
+		file = new RandomAccessFile(image, "r");
+
+		try
+		{
+			if(file.readInt() != TrieImageWriter.MAGIC || file.readInt() != TrieImageWriter.VERSION)
+			{
+				throw new IOException("Not a prefix tree image: " + image.getPath());
+			}
+
+			wordCount = file.readInt();
+			fingerprint = file.readLong();
+			rootSize = file.readInt();
+			rootPopularity = file.readInt();
+
+			for(int letter = 0; letter < LETTERS; letter++)
+			{
+				sizes[letter] = file.readInt();
+				popularities[letter] = file.readInt();
+				offsets[letter] = file.readInt();
+				lengths[letter] = file.readInt();
+			}
+		}
+		catch(IOException exception)
+		{
+			file.close();
+			throw exception;
+		}
+	}
+
+	public int GetWordCount()
+	{
+		return wordCount;
+	}
+
+	public long GetFingerprint()
+	{
+		return fingerprint;
+	}
+
+	public int GetRootSize()
+	{
+		return rootSize;
+	}
+
+	public int GetRootPopularity()
+	{
+		return rootPopularity;
+	}
+
+	public boolean HasSubTrie(int letter)
+	{
+		return lengths[letter] > 0;
+	}
+
+	public int GetSubTrieSize(int letter)
+	{
+		return sizes[letter];
+	}
+
+	public int GetSubTriePopularity(int letter)
+	{
+		return popularities[letter];
+	}
+
+	/**
+	 * Reads the subtree of a first letter
+	 * @param letter The index of the letter in the alphabet
+	 * @param withPopularity If false, the popularity of the nodes is left to zero
+	 * @param nodeCount If not null, nodeCount[0] is set to the number of nodes read
+	 * @return The subtree, or null if the image has no words starting with this letter
+	 */
+
+	public synchronized Trie ReadSubTrie(int letter, boolean withPopularity, int[] nodeCount) throws IOException
+	{
+		if(HasSubTrie(letter) == false)
+		{
+			return null;
+		}
+
+		section = new byte[lengths[letter]];
+		file.seek(offsets[letter]);
+		file.readFully(section);
+
+		position = 0;
+		nodes = 0;
+
+		Trie subTrie = ReadNode(withPopularity);
+
+		if(nodeCount != null)
+		{
+			nodeCount[0] = nodes;
+		}
+
+		section = null;
+		return subTrie;
+	}
+
+	/**
+	 * Reads the whole prefix tree
+	 */
+
+	public Trie ReadAll(boolean withPopularity) throws IOException
+	{
+		Trie root = new Trie(rootSize, withPopularity ? rootPopularity : 0, false);
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			Trie subTrie = ReadSubTrie(letter, withPopularity, null);
+
+			if(subTrie != null)
+			{
+				root.SetSubTrie(Predictor.latinLetters[letter], subTrie);
+			}
+		}
+
+		return root;
+	}
+
+	public synchronized void Close()
+	{
+		try
+		{
+			file.close();
+		}
+		catch(IOException exception)
+		{
+			/* Nothing to do */
+		}
+	}
+
+	private Trie ReadNode(boolean withPopularity)
+	{
+		int size = ReadVarInt();
+		int popularity = ReadVarInt();
+		int childMask = ReadVarInt();
+
+		Trie node = new Trie(size, withPopularity ? popularity : 0, (childMask & TrieImageWriter.TERMINAL) != 0);
+		nodes++;
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			if((childMask & (1 << letter)) != 0)
+			{
+				node.SetSubTrie(Predictor.latinLetters[letter], ReadNode(withPopularity));
+			}
+		}
+
+		return node;
+	}
+
+	private int ReadVarInt()
+	{
+		int value = 0;
+		int shift = 0;
+		byte current;
+
+		do
+		{
+			current = section[position++];
+			value |= (current & 0x7F) << shift;
+			shift += 7;
+		}
+		while((current & 0x80) != 0);
+
+		return value;
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the binary image of a prefix tree.
+ *
+ * The image starts with a header that keeps the number and a fingerprint of the words it
+ * was built from, the size and the popularity of the root and of every first letter subtree,
+ * and where the nodes of each first letter subtree are stored, so that every first letter
+ * subtree can be read on its own. The popularities count the priors of the words only,
+ * what the user typed is kept out of the image, see LazyTrie.
+ * The nodes of a subtree are stored in preorder as variable length integers: the size,
+ * the popularity and a mask with a bit for every letter that has a subtree and the
+ * TERMINAL bit if a word ends at the node, followed by these subtrees in alphabetical order.
+ * @author Panos Sakkos
+ */
+
+public class TrieImageWriter
+{
+	public static final int MAGIC = 0x57525449;
+	public static final int VERSION = 4;
+	public static final int LETTERS = 26;
+
+	/* Bit of the mask of a node where a word ends */
+
+	public static final int TERMINAL = 1 << LETTERS;
+
+	/* magic, version, word count, fingerprint, root size, root popularity and
+	 * size, popularity, offset and length of every first letter subtree */
+
+	public static final int HEADER_SIZE = 5 * 4 + 8 + LETTERS * 4 * 4;
+
+	/* 64 bit FNV-1a */
+
+	public static final long FINGERPRINT_SEED = 0xcbf29ce484222325L;
+	private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+
+	private int wordCount;
+	private long fingerprint;
+	private int rootSize;
+	private int rootPopularity;
+
+	private int[] sizes = new int[LETTERS];
+	private int[] popularities = new int[LETTERS];
+	private byte[][] sections = new byte[LETTERS][];
+	private int[] lengths = new int[LETTERS];
+	private int currentLetter;
+
+	/**
+	 * @param wordCount The number of words the prefix tree was built from
+	 * @param fingerprint The Fingerprint of these words, in the order they were added
+	 */
+
+	public TrieImageWriter(int wordCount, long fingerprint, int rootSize, int rootPopularity)
+	{
+		this.wordCount = wordCount;
+		this.fingerprint = fingerprint;
+		this.rootSize = rootSize;
+		this.rootPopularity = rootPopularity;
+	}
+
+	/**
+	 * Starts the subtree of a first letter. Its nodes must follow with WriteNode,
+	 * starting with the node of the letter itself
+	 * @param letter The index of the letter in the alphabet
+	 * @param size The size of the subtree
+	 * @param popularity The popularity of the subtree
+	 */
+
+	public void BeginSubTrie(int letter, int size, int popularity)
+	{
+		sizes[letter] = size;
+		popularities[letter] = popularity;
+		sections[letter] = new byte[1024];
+		lengths[letter] = 0;
+		currentLetter = letter;
+	}
+
+	/**
+	 * Writes the next node of the current first letter subtree, in preorder
+	 * @param childMask Bit i is set if the node has a subtree for the i-th letter, and
+	 * TERMINAL if a word ends at the node
+	 */
+
+	public void WriteNode(int size, int popularity, int childMask)
+	{
+		/* Three integers take at most 15 bytes */
+
+		if(lengths[currentLetter] + 15 > sections[currentLetter].length)
+		{
+			byte[] grown = new byte[sections[currentLetter].length * 2];
+			System.arraycopy(sections[currentLetter], 0, grown, 0, lengths[currentLetter]);
+			sections[currentLetter] = grown;
+		}
+
+		WriteVarInt(size);
+		WriteVarInt(popularity);
+		WriteVarInt(childMask);
+	}
+
+	public void WriteTo(OutputStream output) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(output);
+
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(wordCount);
+		data.writeLong(fingerprint);
+		data.writeInt(rootSize);
+		data.writeInt(rootPopularity);
+
+		int offset = HEADER_SIZE;
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			int length = lengths[letter];
+
+			data.writeInt(sizes[letter]);
+			data.writeInt(popularities[letter]);
+			data.writeInt(length == 0 ? 0 : offset);
+			data.writeInt(length);
+
+			offset += length;
+		}
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			if(lengths[letter] > 0)
+			{
+				data.write(sections[letter], 0, lengths[letter]);
+			}
+		}
+
+		data.flush();
+	}
+
+	/**
+	 * Writes the image of a prefix tree. Only the latin letters are written
+	 */
+
+	public static void Write(Trie root, int wordCount, long fingerprint, OutputStream output) throws IOException
+	{
+		TrieImageWriter image = new TrieImageWriter(wordCount, fingerprint, root.Size(), root.GetPopularity());
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			Trie subTrie = root.GetSubTrie(Predictor.latinLetters[letter]);
+
+			if(subTrie != null)
+			{
+				image.BeginSubTrie(letter, subTrie.Size(), subTrie.GetPopularity());
+				image.WriteNodes(subTrie);
+			}
+		}
+
+		image.WriteTo(output);
+	}
+
+	private void WriteNodes(Trie node)
+	{
+		int childMask = 0;
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			if(node.GetSubTrie(Predictor.latinLetters[letter]) != null)
+			{
+				childMask |= 1 << letter;
+			}
+		}
+
+		if(node.GetRecord() != null)
+		{
+			childMask |= TERMINAL;
+		}
+
+		WriteNode(node.Size(), node.GetPopularity(), childMask);
+
+		for(int letter = 0; letter < LETTERS; letter++)
+		{
+			if((childMask & (1 << letter)) != 0)
+			{
+				WriteNodes(node.GetSubTrie(Predictor.latinLetters[letter]));
+			}
+		}
+	}
+
+	/**
+	 * Adds a word to a fingerprint, start with FINGERPRINT_SEED
+	 */
+
+	public static long Fingerprint(long fingerprint, String word)
+	{
+		for(int i = 0; i < word.length(); i++)
+		{
+			fingerprint = (fingerprint ^ word.charAt(i)) * FINGERPRINT_PRIME;
+		}
+
+		/* Separate the words */
+
+		return (fingerprint ^ 0xFFFF) * FINGERPRINT_PRIME;
+	}
+
+	/* Unsigned LEB128, seven bits per byte */
+
+	private void WriteVarInt(int value)
+	{
+		byte[] section = sections[currentLetter];
+		int length = lengths[currentLetter];
+
+		while((value & ~0x7F) != 0)
+		{
+			section[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		section[length++] = (byte) value;
+		lengths[currentLetter] = length;
+	}
+}
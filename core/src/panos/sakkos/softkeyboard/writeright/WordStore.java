@@ -0,0 +1,91 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+/**
+ * The storage of the dictionary and of the usage statistics of its words
+ * @author Panos Sakkos
+ */
+
+public interface WordStore
+{
+	/* Words that the user added are evicted once the store holds this many of them. The words
+	 * of the dictionary, the ones with a prior, are never evicted */
+
+	public static final int EVICTION_THRESHOLD = 1500;
+
+	/* Percentage of the least recently used added words that are evicted */
+
+	public static final float EVICTION_PERCENTAGE = 0.3f;
+
+	public interface WordVisitor
+	{
+		/**
+		 * @param prior The popularity that the dictionary gives the word, see Statistics.GetPrior
+		 * @param usage How many times the word was typed
+		 */
+
+		public void Visit(String word, int prior, int usage, long timestamp);
+	}
+
+	/**
+	 * Visits a window of the words in insertion order, so the words of the initial
+	 * dictionary come first, most frequent first
+	 * @param offset The number of words to skip
+	 * @param limit The maximum number of words to visit, negative for all
+	 */
+
+	public void EnumerateWords(int offset, int limit, WordVisitor visitor);
+
+	/**
+	 * Visits every word in ascending order, so the prefix tree of the whole dictionary
+	 * can be built in one pass, see SortedTrieBuilder
+	 */
+
+	public void EnumerateSortedWords(WordVisitor visitor);
+
+	/**
+	 * Returns how many words the store holds
+	 */
+
+	public int Size();
+
+	public boolean ContainsWord(String word);
+
+	public void AddNewWord(String word);
+
+	/**
+	 * Writes the usage and the timestamp of a word, its prior is never changed
+	 */
+
+	public void UpdateWords(String word, Statistics statistics);
+
+	/**
+	 * Evicts the least recently used words that the user added, if there are too many of them
+	 */
+
+	public void EvictWords();
+
+	/**
+	 * Makes every change so far persistent
+	 */
+
+	public void Flush();
+}
@@ -0,0 +1,53 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import android.util.Log;
+
+/**
+ * Writes the log of the prediction core to the Android log, with the tag and the debug
+ * gate that the keyboard uses
+ * @author Panos Sakkos
+ */
+
+public class AndroidLogger implements Logger
+{
+	private static final String TAG = "DEBUG";
+
+	/* Like the keyboard, debug messages are logged only in debug builds */
+
+	public void Debug(String message)
+	{
+		if(SoftKeyboard.DEBUG)
+		{
+			Log.d(TAG, message);
+		}
+	}
+
+	public void Info(String message)
+	{
+		Log.i(TAG, message);
+	}
+
+	public void Error(String message)
+	{
+		Log.e(TAG, message);
+	}
+}
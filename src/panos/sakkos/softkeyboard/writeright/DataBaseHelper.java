@@ -23,8 +23,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Collections;
 
 import android.content.Context;
 import android.database.Cursor;
@@ -33,7 +31,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 
-public class DataBaseHelper extends SQLiteOpenHelper
+public class DataBaseHelper extends SQLiteOpenHelper implements WordStore
 {	 
     private static String DB_PATH = "/data/data/panos.sakkos.softkeyboard.writeright/databases/";
     private static String DB_NAME = "writeright.db";
@@ -41,13 +39,12 @@ public class DataBaseHelper extends SQLiteOpenHelper
     private SQLiteDatabase myDataBase; 
     private final Context myContext;
  
-	String []wordsColumns = new String[3];
+	String []wordsColumns = new String[4];
 	String []essentialsColumns = new String[2];
 	
-	/* upgrade stuff */
+	/* Size of the buffer used while copying the database from the assets */
 	
-	private final int THRESHOLD = 1500;
-	private final float CLEAN_PERCENTAGE = 0.3f;
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
 	
     /**
      * Constructor
@@ -63,6 +60,7 @@ public class DataBaseHelper extends SQLiteOpenHelper
         wordsColumns[0] = "word";
         wordsColumns[1] = "usage";
         wordsColumns[2] = "timestamp";
+        wordsColumns[3] = "prior";
         
         essentialsColumns[0] = "k";
         essentialsColumns[1] = "continuous_successes";
@@ -134,7 +132,7 @@ public class DataBaseHelper extends SQLiteOpenHelper
     	OutputStream myOutput = new FileOutputStream(outFileName);
  
     	//transfer bytes from the inputfile to the outputfile
-    	byte[] buffer = new byte[1024];
+    	byte[] buffer = new byte[COPY_BUFFER_SIZE];
     	int length;
     	while ((length = myInput.read(buffer))>0){
     		myOutput.write(buffer, 0, length);
@@ -150,6 +148,28 @@ public class DataBaseHelper extends SQLiteOpenHelper
     {
         String myPath = DB_PATH + DB_NAME;
     	myDataBase = SQLiteDatabase.openDatabase(myPath, null, SQLiteDatabase.OPEN_READWRITE); 
+    	
+    	/* Databases from before the priors had a column of their own get it, without priors */
+    	
+    	if(HasColumn("Words", "prior") == false)
+    	{
+    		myDataBase.execSQL("ALTER TABLE Words ADD COLUMN prior NUMERIC DEFAULT 0");
+    	}
+    }
+    
+    private boolean HasColumn(String table, String column)
+    {
+    	Cursor cursor = myDataBase.rawQuery("PRAGMA table_info(" + table + ")", null);
+    	boolean exists = false;
+    	
+    	while(cursor.moveToNext())
+    	{
+    		exists |= column.equals(cursor.getString(1));
+    	}
+    	
+    	cursor.close();
+    	
+    	return exists;
     }
  
     @Override
@@ -188,6 +208,69 @@ public class DataBaseHelper extends SQLiteOpenHelper
 		return myDataBase.query("Words", wordsColumns, null, null, null, null, null);
 	}
 	
+	/**
+	 * Selects a window of the words in insertion order. The dictionary was populated
+	 * from the frequency ordered words.txt, so the first rows are the most frequent words
+	 * @param offset The number of words to skip
+	 * @param limit The maximum number of words to return
+	 */
+	
+	public Cursor SelectWords(int offset, int limit)
+	{
+		return myDataBase.query("Words", wordsColumns, null, null, null, null, "_id", Integer.toString(offset) + "," + Integer.toString(limit));
+	}
+	
+	/**
+	 * Selects all the words in ascending order, sorted by SQLite instead of the predictor
+	 */
+	
+	public Cursor SelectSortedWords()
+	{
+		return myDataBase.query("Words", wordsColumns, null, null, null, null, "word");
+	}
+	
+	public void EnumerateWords(int offset, int limit, WordVisitor visitor)
+	{
+		Cursor cursor = limit < 0 && offset == 0 ? SelectAllWords() : SelectWords(offset, limit < 0 ? Integer.MAX_VALUE : limit);
+		
+		while(cursor.moveToNext())
+		{
+			visitor.Visit(cursor.getString(0), cursor.getInt(3), cursor.getInt(1), Long.parseLong(cursor.getString(2)));
+		}
+		
+		cursor.close();
+	}
+	
+	public void EnumerateSortedWords(WordVisitor visitor)
+	{
+		Cursor cursor = SelectSortedWords();
+		
+		while(cursor.moveToNext())
+		{
+			visitor.Visit(cursor.getString(0), cursor.getInt(3), cursor.getInt(1), Long.parseLong(cursor.getString(2)));
+		}
+		
+		cursor.close();
+	}
+	
+	public int Size()
+	{
+		Cursor cursor = myDataBase.rawQuery("SELECT COUNT(*) FROM Words", null);
+		int count = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+		cursor.close();
+		
+		return count;
+	}
+	
+	public boolean ContainsWord(String word)
+	{
+		Cursor cursor = myDataBase.query("Words", wordsColumns, "word=?", new String[] { word }, null, null, null);
+		boolean exists = cursor.getCount() > 0;
+		cursor.close();
+		
+		return exists;
+	}
+	
 	public void UpdateWords(String word, Statistics statistics)
 	{
 		myDataBase.execSQL("UPDATE Words SET usage=" + statistics.GetPopularity() + ", timestamp='" + Long.toString(statistics.GetTimestamp()) + "' WHERE word='" + word + "'");
@@ -195,38 +278,41 @@ public class DataBaseHelper extends SQLiteOpenHelper
 	
 	public void AddNewWord(String word)
 	{
-		int count = myDataBase.query("Words", wordsColumns, null, null, null, null, null).getCount();
-		myDataBase.execSQL("INSERT INTO Words VALUES (" + Integer.toString(count) + ", '"+ word +"', 0, '0')");	
+		/* A NULL key is one past the largest key, which may be larger than the count once words are evicted */
+		
+		myDataBase.execSQL("INSERT INTO Words VALUES (NULL, '"+ word +"', 0, '0', 0)");	
 	}
 	
-	public void UpgradeDatabase()
+	public void EvictWords()
 	{
-		Cursor cursor = myDataBase.query("Words", wordsColumns, null, null, null, null, null);
+		/* Only the words that the user added are evicted, the words of the dictionary have priors */
+		
+		Cursor cursor = myDataBase.rawQuery("SELECT COUNT(*) FROM Words WHERE prior = 0", null);
+		int added = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+		cursor.close();
 		
-		if(cursor.getCount() >= THRESHOLD)
+		if(added < EVICTION_THRESHOLD)
 		{
-			/* Delete CLEAN_PERCENTAGE % of the last recently used words*/			
-			
-	    	ArrayList<Long> timestamps = new ArrayList<Long>();    	
-			
-			while(cursor.moveToNext())
-			{
-				timestamps.add(Long.parseLong(cursor.getString(2)));
-			}
-
-			Collections.sort(timestamps);
-			
-			int threshold = (int) (cursor.getCount() * CLEAN_PERCENTAGE);
-			for(int i = 0; i < threshold; i++)
-			{
-				DeleteWordBeforeTimestamp(timestamps.get(i));				
-			}
+			return;
 		}
+		
+		/* Delete EVICTION_PERCENTAGE % of the last recently used words, in one statement */
+		
+		int evicted = (int) (added * EVICTION_PERCENTAGE);
+		cursor = myDataBase.rawQuery("SELECT CAST(timestamp AS INTEGER) FROM Words WHERE prior = 0 ORDER BY CAST(timestamp AS INTEGER) LIMIT 1 OFFSET " + Integer.toString(evicted), null);
+		
+		if(cursor.moveToFirst())
+		{
+			myDataBase.execSQL("DELETE FROM Words WHERE prior = 0 AND CAST(timestamp AS INTEGER) < ?", new Object[] { Long.valueOf(cursor.getLong(0)) });
+		}
+		
+		cursor.close();
 	}
 	
-	private void DeleteWordBeforeTimestamp(long timestamp)
+	/* Every change is written to the database immediately */
+	
+	public void Flush()
 	{
-		myDataBase.execSQL("DELETE FROM Words WHERE timestamp ='" + Long.toString(timestamp) +"';");
 	}
 }
 
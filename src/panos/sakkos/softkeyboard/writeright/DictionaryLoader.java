@@ -0,0 +1,298 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.os.Handler;
+
+/**
+ * Loads the predictor in stages. The most frequent words are loaded first, so the
+ * keyboard can predict right away, and the whole dictionary is loaded in the
+ * background and published to the predictor when it is ready.
+ * The store itself can be opened in the background too, so nothing is loaded on
+ * the thread of the keyboard.
+ * @author Panos Sakkos
+ */
+
+public class DictionaryLoader
+{
+	/* Readiness states */
+
+	public static final int NOT_LOADED = 0;
+	public static final int BOOTSTRAPPED = 1;
+	public static final int READY = 2;
+
+	/* Memory that the strongly held first letter subtrees of the whole dictionary may take */
+
+	private static final long MODEL_MEMORY_BUDGET = 4 * 1024 * 1024;
+
+	private WordStore store;
+	private Callable<WordStore> storeOpener;
+	private File image;
+	private Handler handler;
+	private Runnable onBootstrapped;
+	private Runnable onReady;
+	private ExecutorService executor;
+
+	private Predictor predictor;
+	private volatile int readiness = NOT_LOADED;
+	private volatile boolean canceled = false;
+	private LatencyStats stats = new LatencyStats();
+
+	/**
+	 * Must be created on the thread that uses the predictor, since the complete
+	 * dictionary is published on it
+	 * @param store The store that holds the dictionary
+	 * @param image The prefix tree image of the whole dictionary, read lazily
+	 * @param onReady Called on the creating thread when the whole dictionary is published, can be null
+	 */
+
+	public DictionaryLoader(WordStore store, File image, Runnable onReady)
+	{
+		this(image, null, onReady);
+		this.store = store;
+	}
+
+	/**
+	 * Creates a loader that opens the store on its own thread, see LoadAsync
+	 * @param storeOpener Opens the store that holds the dictionary, called on the loader's thread
+	 * @param image The prefix tree image of the whole dictionary, read lazily
+	 * @param onBootstrapped Called on the creating thread when the predictor can be used, can be null
+	 * @param onReady Called on the creating thread when the whole dictionary is published, can be null
+	 */
+
+	public DictionaryLoader(Callable<WordStore> storeOpener, File image, Runnable onBootstrapped, Runnable onReady)
+	{
+		this(image, onBootstrapped, onReady);
+		this.storeOpener = storeOpener;
+	}
+
+	private DictionaryLoader(File image, Runnable onBootstrapped, Runnable onReady)
+	{
+		this.image = image;
+		this.onBootstrapped = onBootstrapped;
+		this.onReady = onReady;
+		handler = new Handler();
+
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable runnable)
+			{
+				return new Thread(runnable, "DictionaryLoader");
+			}
+		});
+	}
+
+	/**
+	 * Loads the most frequent words and returns a predictor that can be used immediately
+	 */
+
+	public Predictor Bootstrap()
+	{
+        long start = LatencyStats.Start();
+		predictor = new Predictor(store, Predictor.BootstrapWords(store.Size()));
+		long elapsed = stats.Record(LatencyStats.BOOTSTRAP, start) / 1000000;
+		Logging.Debug("PREDICTOR BOOTSTRAPPED IN " + Long.toString(elapsed) + " MILLISECONDS");
+
+		readiness = predictor.IsComplete() ? READY : BOOTSTRAPPED;
+
+		return predictor;
+	}
+
+	/**
+	 * Opens the store, bootstraps the predictor and loads the whole dictionary, all on
+	 * the loader's thread. The predictor is handed over through onBootstrapped, on the
+	 * thread that created the loader; until then GetPredictor returns null
+	 */
+
+	public void LoadAsync()
+	{
+		if(readiness != NOT_LOADED || storeOpener == null)
+		{
+			return;
+		}
+
+		executor.execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+			        long start = LatencyStats.Start();
+					store = storeOpener.call();
+					long elapsed = stats.Record(LatencyStats.STORE_OPEN, start) / 1000000;
+					Logging.Debug("DICTIONARY STORE OPENED IN " + Long.toString(elapsed) + " MILLISECONDS");
+				}
+				catch(Exception exception)
+				{
+					Logging.Error("OPEN DICTIONARY STORE: FAILED");
+					return;
+				}
+
+				final Predictor bootstrapped = Bootstrap();
+
+				handler.post(new Runnable()
+				{
+					public void run()
+					{
+						if(canceled)
+						{
+							return;
+						}
+
+						if(onBootstrapped != null)
+						{
+							onBootstrapped.run();
+						}
+
+						/* If the bootstrap was the whole dictionary there is nothing more to publish */
+
+						if(bootstrapped.IsComplete() && onReady != null)
+						{
+							onReady.run();
+						}
+					}
+				});
+
+				if(readiness == BOOTSTRAPPED)
+				{
+					LoadWholeDictionary();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Loads the whole dictionary on a background thread and publishes it to the
+	 * bootstrapped predictor atomically, on the thread that created the loader
+	 */
+
+	public void LoadRemainder()
+	{
+		if(readiness != BOOTSTRAPPED)
+		{
+			return;
+		}
+
+		executor.execute(new Runnable()
+		{
+			public void run()
+			{
+				LoadWholeDictionary();
+			}
+		});
+	}
+
+	/* Runs on the loader's thread */
+
+	private void LoadWholeDictionary()
+	{
+		final Predictor complete;
+
+		Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+
+		try
+		{
+	        long start = LatencyStats.Start();
+			complete = new Predictor(store, image, MODEL_MEMORY_BUDGET);
+			long elapsed = stats.Record(LatencyStats.WHOLE_DICTIONARY, start) / 1000000;
+			Logging.Debug("WHOLE DICTIONARY LOADED IN " + Long.toString(elapsed) + " MILLISECONDS");
+		}
+		catch(Exception exception)
+		{
+			Logging.Error("LOAD WHOLE DICTIONARY: FAILED");
+			return;
+		}
+
+		handler.post(new Runnable()
+		{
+			public void run()
+			{
+				if(canceled)
+				{
+					return;
+				}
+
+				predictor.Publish(complete);
+				readiness = READY;
+				Logging.Debug("WHOLE DICTIONARY PUBLISHED");
+
+				if(onReady != null)
+				{
+					onReady.run();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Records the durations of opening the store and of the loads in stats. Must be
+	 * called before loading
+	 */
+
+	public void SetStats(LatencyStats stats)
+	{
+		this.stats = stats;
+	}
+
+	/**
+	 * Stops publishing, used when the keyboard is destroyed before the load finishes
+	 */
+
+	public void Cancel()
+	{
+		canceled = true;
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the bootstrapped predictor, or null if it is not loaded yet. Must be
+	 * called on the thread that created the loader
+	 */
+
+	public Predictor GetPredictor()
+	{
+		return readiness == NOT_LOADED ? null : predictor;
+	}
+
+	/**
+	 * Returns the store, once it is opened
+	 */
+
+	public WordStore GetStore()
+	{
+		return store;
+	}
+
+	public int GetReadiness()
+	{
+		return readiness;
+	}
+
+	public boolean IsReady()
+	{
+		return readiness == READY;
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import android.view.inputmethod.InputConnection;
+
+/**
+ * Local copy of the text around the cursor of the editor, so the keyboard doesn't
+ * have to ask the editor (a call to another process) on every key.
+ *
+ * The mirror is read from the editor once and then kept up to date with the edits
+ * that the keyboard sends. Every edit moves the cursor to a position that the editor
+ * is expected to report through onUpdateSelection. If the editor reports anything
+ * else, the text was changed by someone else and the mirror is read again the next
+ * time it is needed.
+ * @author Panos Sakkos
+ */
+
+public class EditorMirror
+{
+	/* How much text before the cursor is kept, the keyboard looks at most at WINDOW characters */
+
+	public static final int WINDOW = 100;
+	private static final int CAPACITY = 2 * WINDOW;
+
+	/* How many edits may be waiting for their selection update */
+
+	private static final int PENDING = 16;
+
+	private StringBuilder before = new StringBuilder(CAPACITY + WINDOW);
+	private int composingLength;
+	private boolean textAfterCursor;
+	private boolean valid = false;
+
+	/* Position of the cursor in the editor, -1 if unknown */
+
+	private int cursor = -1;
+
+	private int[] pending = new int[PENDING];
+	private int pendingStart, pendingCount;
+
+	private int resyncs;
+
+	/**
+	 * Forgets the text, used when a new editor is bound
+	 * @param selectionStart The initial selection of the editor, -1 if unknown
+	 */
+
+	public void Reset(int selectionStart, int selectionEnd)
+	{
+		Invalidate();
+		composingLength = 0;
+		cursor = selectionStart == selectionEnd ? selectionStart : -1;
+	}
+
+	/**
+	 * Makes the mirror read the text from the editor the next time it is needed.
+	 * The composing text is the keyboard's own, so it is still followed
+	 */
+
+	public void Invalidate()
+	{
+		valid = false;
+		pendingCount = 0;
+	}
+
+	public boolean IsValid()
+	{
+		return valid;
+	}
+
+	/**
+	 * Returns how many times the text was read from the editor
+	 */
+
+	public int GetResyncs()
+	{
+		return resyncs;
+	}
+
+	/**
+	 * Returns the last characters before the cursor, at most n of them
+	 * @param n Up to WINDOW
+	 */
+
+	public CharSequence GetTextBeforeCursor(InputConnection inputConnection, int n)
+	{
+		if(Sync(inputConnection) == false)
+		{
+			return inputConnection == null ? "" : inputConnection.getTextBeforeCursor(n, 0);
+		}
+
+		return before.subSequence(Math.max(0, before.length() - n), before.length());
+	}
+
+	/**
+	 * Returns the character before the cursor, or noInput if there is none
+	 */
+
+	public char GetCharacterBeforeCursor(InputConnection inputConnection, char noInput)
+	{
+		if(Sync(inputConnection) == false)
+		{
+			CharSequence input = inputConnection == null ? "" : inputConnection.getTextBeforeCursor(1, 0);
+			return input == null || input.length() == 0 ? noInput : input.charAt(input.length() - 1);
+		}
+
+		return before.length() == 0 ? noInput : before.charAt(before.length() - 1);
+	}
+
+	public boolean CursorIsAtTheEnd(InputConnection inputConnection)
+	{
+		if(Sync(inputConnection) == false)
+		{
+			CharSequence input = inputConnection == null ? "" : inputConnection.getTextAfterCursor(1, 0);
+			return input == null || input.length() == 0;
+		}
+
+		return textAfterCursor == false;
+	}
+
+	/**
+	 * Must be called after InputConnection.setComposingText with a cursor position of 1
+	 */
+
+	public void ComposingSet(CharSequence composing)
+	{
+		Replace(composing);
+		composingLength = composing.length();
+	}
+
+	/**
+	 * Must be called after InputConnection.finishComposingText
+	 */
+
+	public void ComposingFinished()
+	{
+		composingLength = 0;
+	}
+
+	/**
+	 * Must be called after InputConnection.commitText
+	 */
+
+	public void Committed(CharSequence text, int newCursorPosition)
+	{
+		/* Only a cursor right after the text is followed, or one that ends up at the end of the input */
+
+		boolean afterText = newCursorPosition == 1 || (newCursorPosition > 1 && textAfterCursor == false)
+				|| (newCursorPosition == 0 && text.length() == 0);
+
+		if(afterText == false)
+		{
+			Invalidate();
+		}
+		else
+		{
+			Replace(text);
+		}
+
+		composingLength = 0;
+	}
+
+	/**
+	 * Must be called after a delete key event is sent to the editor
+	 */
+
+	public void Deleted()
+	{
+		if(valid == false || composingLength > 0)
+		{
+			Invalidate();
+			return;
+		}
+
+		if(before.length() > 0)
+		{
+			before.setLength(before.length() - 1);
+			Expect(cursor - 1);
+		}
+		else if(cursor != 0)
+		{
+			Invalidate();
+		}
+	}
+
+	/**
+	 * Must be called from onUpdateSelection
+	 */
+
+	public void SelectionUpdated(int newSelectionStart, int newSelectionEnd)
+	{
+		if(newSelectionStart != newSelectionEnd)
+		{
+			Invalidate();
+			cursor = -1;
+			return;
+		}
+
+		if(valid)
+		{
+			/* Skip the updates of edits that the editor reported together */
+
+			for(int i = 0; i < pendingCount; i++)
+			{
+				if(pending[(pendingStart + i) % PENDING] == newSelectionStart)
+				{
+					pendingStart = (pendingStart + i + 1) % PENDING;
+					pendingCount -= i + 1;
+					return;
+				}
+			}
+
+			if(pendingCount == 0 && newSelectionStart == cursor)
+			{
+				return;
+			}
+
+			Invalidate();
+		}
+
+		cursor = newSelectionStart;
+	}
+
+	/* Reads the text around the cursor from the editor, if the mirror is out of date */
+
+	private boolean Sync(InputConnection inputConnection)
+	{
+		if(valid && (before.length() >= WINDOW || before.length() == cursor))
+		{
+			return true;
+		}
+
+		if(inputConnection == null)
+		{
+			return false;
+		}
+
+		CharSequence textBefore = inputConnection.getTextBeforeCursor(CAPACITY, 0);
+		CharSequence textAfter = inputConnection.getTextAfterCursor(1, 0);
+
+		if(textBefore == null || textAfter == null)
+		{
+			return false;
+		}
+
+		before.setLength(0);
+		before.append(textBefore);
+		textAfterCursor = textAfter.length() > 0;
+		pendingCount = 0;
+		valid = true;
+		resyncs++;
+
+		/* The editor may not have reported the last edits yet, but if all the text before the cursor
+		 * was read, the cursor is where the text ends */
+
+		if(before.length() < CAPACITY)
+		{
+			cursor = before.length();
+		}
+
+		return true;
+	}
+
+	/* Replaces the composing text with the text, leaving the cursor after it */
+
+	private void Replace(CharSequence text)
+	{
+		if(valid == false)
+		{
+			return;
+		}
+
+		before.setLength(before.length() - Math.min(composingLength, before.length()));
+		before.append(text);
+
+		/* Keep only the end of the text */
+
+		if(before.length() > CAPACITY + WINDOW / 2)
+		{
+			before.delete(0, before.length() - CAPACITY);
+		}
+
+		Expect(cursor - composingLength + text.length());
+	}
+
+	private void Expect(int position)
+	{
+		/* If the cursor is unknown, the next selection update tells where it is */
+
+		if(cursor < 0)
+		{
+			return;
+		}
+
+		cursor = position;
+
+		if(pendingCount == PENDING)
+		{
+			pendingStart = (pendingStart + 1) % PENDING;
+			pendingCount--;
+		}
+
+		pending[(pendingStart + pendingCount) % PENDING] = position;
+		pendingCount++;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Runs a task at most once per display frame, at the start of the next frame.
+ * Requests made before the task runs are coalesced, so the task sees only the
+ * latest state. The frames are aligned on the uptime clock, since Choreographer
+ * is not available before API 16.
+ * @author Panos Sakkos
+ */
+
+public class FrameScheduler
+{
+	/* Used when the display doesn't report its refresh rate */
+
+	public static final float DEFAULT_REFRESH_RATE = 60;
+
+	private Handler handler;
+	private Runnable task;
+	private long frameMillis;
+
+	private boolean scheduled = false;
+	private int requests;
+	private int runs;
+
+	private Runnable frame = new Runnable()
+	{
+		public void run()
+		{
+			scheduled = false;
+			runs++;
+			task.run();
+		}
+	};
+
+	/**
+	 * @param handler The handler of the thread that runs the task
+	 * @param task The task to run once per frame
+	 * @param refreshRate The refresh rate of the display, in frames per second
+	 */
+
+	public FrameScheduler(Handler handler, Runnable task, float refreshRate)
+	{
+		this.handler = handler;
+		this.task = task;
+
+		frameMillis = (long) Math.max(1, Math.floor(1000 / (refreshRate > 0 ? refreshRate : DEFAULT_REFRESH_RATE)));
+	}
+
+	/**
+	 * Runs the task at the start of the next frame, unless it is already scheduled
+	 */
+
+	public void Schedule()
+	{
+		requests++;
+
+		if(scheduled)
+		{
+			return;
+		}
+
+		long nextFrame = (SystemClock.uptimeMillis() / frameMillis + 1) * frameMillis;
+
+		scheduled = true;
+		handler.postAtTime(frame, nextFrame);
+	}
+
+	/**
+	 * Drops the scheduled run, if any
+	 */
+
+	public void Cancel()
+	{
+		if(scheduled)
+		{
+			handler.removeCallbacks(frame);
+			scheduled = false;
+		}
+	}
+
+	public boolean IsScheduled()
+	{
+		return scheduled;
+	}
+
+	/**
+	 * Returns how many times the task was asked for
+	 */
+
+	public int GetRequests()
+	{
+		return requests;
+	}
+
+	/**
+	 * Returns how many times the task ran, the rest of the requests were coalesced
+	 */
+
+	public int GetRuns()
+	{
+		return runs;
+	}
+}
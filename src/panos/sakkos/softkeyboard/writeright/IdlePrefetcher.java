@@ -0,0 +1,185 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package panos.sakkos.softkeyboard.writeright;
+
+import android.os.MessageQueue;
+
+/**
+ * Uses the time the keyboard waits for the next key to prepare for it. When the
+ * message queue is idle, the predictions and the layout of the most probable next
+ * letters are computed, one letter per idle callback, so if one of them is typed
+ * its resize is served from the caches of the predictor and of the layouts.
+ * A real key is never delayed by more than one letter, and the work is canceled
+ * as soon as the key arrives.
+ * @author Panos Sakkos
+ */
+
+public class IdlePrefetcher implements MessageQueue.IdleHandler
+{
+	/* How many of the next letters are prepared after every key */
+
+	public static final int MAX_PREFETCHES = 3;
+
+	private MessageQueue queue;
+	private TopKSelector topKSelector = new TopKSelector();
+
+	private Predictor predictor;
+	private KeyLayouts keyLayouts;
+	private int qwertyLetters;
+
+	/* The letters that are left to prepare and their probability */
+
+	private float[] predictions = new float[TopKSelector.LETTERS];
+	private float[] next = new float[TopKSelector.LETTERS];
+	private int pending;
+	private int k;
+	private int shrunkMask;
+	private int prefetched;
+
+	private boolean registered = false;
+	private int steps;
+
+	/**
+	 * @param queue The message queue of the thread that types
+	 */
+
+	public IdlePrefetcher(MessageQueue queue)
+	{
+		this.queue = queue;
+	}
+
+	public void SetPredictor(Predictor predictor)
+	{
+		Cancel();
+		this.predictor = predictor;
+	}
+
+	/**
+	 * @param keyLayouts The layouts of the keyboard that is resized, can be null
+	 * @param qwertyLetters The letters of the keys of the keyboard
+	 */
+
+	public void SetKeyLayouts(KeyLayouts keyLayouts, int qwertyLetters)
+	{
+		Cancel();
+		this.keyLayouts = keyLayouts;
+		this.qwertyLetters = qwertyLetters;
+	}
+
+	/**
+	 * Prepares for the next key, once the queue is idle
+	 * @param predictions The predictions of the word typed so far
+	 * @param candidates The letters to prepare for, as a TopKSelector mask
+	 * @param k How aggressive the selection of the shrunk keys is
+	 * @param shrunkMask The keys that are shrunk now
+	 */
+
+	public void Start(float[] predictions, int candidates, int k, int shrunkMask)
+	{
+		if(predictor == null)
+		{
+			return;
+		}
+
+		System.arraycopy(predictions, 0, this.predictions, 0, TopKSelector.LETTERS);
+		pending = candidates;
+		this.k = k;
+		this.shrunkMask = shrunkMask;
+		prefetched = 0;
+
+		if(registered == false && pending != 0)
+		{
+			queue.addIdleHandler(this);
+			registered = true;
+		}
+	}
+
+	/**
+	 * Drops the work that is left, called when a key arrives
+	 */
+
+	public void Cancel()
+	{
+		pending = 0;
+
+		if(registered)
+		{
+			queue.removeIdleHandler(this);
+			registered = false;
+		}
+	}
+
+	/**
+	 * Returns how many letters were prepared
+	 */
+
+	public int GetSteps()
+	{
+		return steps;
+	}
+
+	public boolean queueIdle()
+	{
+		if(pending != 0 && prefetched < MAX_PREFETCHES)
+		{
+			Step();
+		}
+
+		registered = pending != 0 && prefetched < MAX_PREFETCHES;
+
+		return registered;
+	}
+
+	/* Prepares the most probable letter that is left */
+
+	private void Step()
+	{
+		int letter = -1;
+
+		for(int i = 0; i < TopKSelector.LETTERS; i++)
+		{
+			if((pending & (1 << i)) != 0 && (letter < 0 || predictions[i] > predictions[letter]))
+			{
+				letter = i;
+			}
+		}
+
+		pending &= ~(1 << letter);
+		prefetched++;
+		steps++;
+
+		if(predictor.Prefetch(Predictor.latinLetters[letter], next) == false || keyLayouts == null)
+		{
+			return;
+		}
+
+		int topKMask = topKSelector.Select(next, k);
+
+		if(topKMask != 0)
+		{
+			keyLayouts.Get(qwertyLetters & ~topKMask);
+
+			/* Keep the layout that is shown the most recently used, so it is never computed over */
+
+			keyLayouts.Get(shrunkMask);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+/**
+ * Spatial index over the keys of a keyboard, used to find the key under a touch
+ * without scanning every key. The keyboard is divided in cells and every cell keeps
+ * the keys that may reach it in any of the layouts it was built for, so the grid is
+ * built once and stays valid while the keys are resized.
+ *
+ * A touch goes to the key with the smallest distance from it, minus how much the
+ * key's target is expanded. A key's target is expanded in proportion to its weight,
+ * so a probable key also takes the touches that land close to it.
+ * @author Panos Sakkos
+ */
+
+public class KeyGrid
+{
+	public static final int COLUMNS = 10;
+	public static final int ROWS = 5;
+
+	private int cellWidth, cellHeight;
+	private int[][] cells = new int[COLUMNS * ROWS][];
+
+	/**
+	 * @param layouts The KeyLayouts layouts the keys may take
+	 * @param margin How far from its bounds a key may still be touched
+	 * @param width The width of the keyboard
+	 * @param height The height of the keyboard
+	 */
+
+	public KeyGrid(int[][] layouts, int margin, int width, int height)
+	{
+		int keys = layouts[0].length / KeyLayouts.FIELDS;
+
+		cellWidth = Math.max(1, (width + COLUMNS - 1) / COLUMNS);
+		cellHeight = Math.max(1, (height + ROWS - 1) / ROWS);
+
+		int[] counts = new int[cells.length];
+		int[] bounds = new int[keys * 4];
+
+		/* The cells that every key may reach, in any layout */
+
+		for(int key = 0; key < keys; key++)
+		{
+			int left = Integer.MAX_VALUE, top = Integer.MAX_VALUE, right = Integer.MIN_VALUE, bottom = Integer.MIN_VALUE;
+
+			for(int[] layout : layouts)
+			{
+				int i = key * KeyLayouts.FIELDS;
+
+				left = Math.min(left, layout[i + KeyLayouts.X]);
+				top = Math.min(top, layout[i + KeyLayouts.Y]);
+				right = Math.max(right, layout[i + KeyLayouts.X] + layout[i + KeyLayouts.WIDTH]);
+				bottom = Math.max(bottom, layout[i + KeyLayouts.Y] + layout[i + KeyLayouts.HEIGHT]);
+			}
+
+			bounds[key * 4] = Column(left - margin);
+			bounds[key * 4 + 1] = Row(top - margin);
+			bounds[key * 4 + 2] = Column(right + margin);
+			bounds[key * 4 + 3] = Row(bottom + margin);
+
+			for(int row = bounds[key * 4 + 1]; row <= bounds[key * 4 + 3]; row++)
+			{
+				for(int column = bounds[key * 4]; column <= bounds[key * 4 + 2]; column++)
+				{
+					counts[row * COLUMNS + column]++;
+				}
+			}
+		}
+
+		for(int cell = 0; cell < cells.length; cell++)
+		{
+			cells[cell] = new int[counts[cell]];
+			counts[cell] = 0;
+		}
+
+		for(int key = 0; key < keys; key++)
+		{
+			for(int row = bounds[key * 4 + 1]; row <= bounds[key * 4 + 3]; row++)
+			{
+				for(int column = bounds[key * 4]; column <= bounds[key * 4 + 2]; column++)
+				{
+					int cell = row * COLUMNS + column;
+					cells[cell][counts[cell]++] = key;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the keys that may be under a point
+	 */
+
+	public int[] GetCandidates(int x, int y)
+	{
+		return cells[Row(y) * COLUMNS + Column(x)];
+	}
+
+	/**
+	 * Returns the key that a touch goes to
+	 * @param layout The current layout of the keys
+	 * @param offsetsY How much lower than its bounds every key is touched, can be null
+	 * @param weights The weight of every key between 0 and 1, can be null for no expansion
+	 * @param expansion How much the target of a key with weight 1 is expanded
+	 * @return The index of the key, or -1 if the touch is not on or close to any key
+	 */
+
+	public int Find(int x, int y, int[] layout, int[] offsetsY, float[] weights, int expansion)
+	{
+		int[] candidates = GetCandidates(x, y);
+		int found = -1;
+		float foundDistance = 0;
+
+		for(int c = 0; c < candidates.length; c++)
+		{
+			int key = candidates[c];
+			int i = key * KeyLayouts.FIELDS;
+
+			int left = layout[i + KeyLayouts.X];
+			int top = layout[i + KeyLayouts.Y] + (offsetsY == null ? 0 : offsetsY[key]);
+			int right = left + layout[i + KeyLayouts.WIDTH];
+			int bottom = top + layout[i + KeyLayouts.HEIGHT];
+
+			int dx = x < left ? left - x : (x >= right ? x - right + 1 : 0);
+			int dy = y < top ? top - y : (y >= bottom ? y - bottom + 1 : 0);
+
+			float distance = Math.max(dx, dy) - (weights == null ? 0 : weights[key] * expansion);
+
+			if(distance <= 0 && (found < 0 || distance < foundDistance))
+			{
+				found = key;
+				foundDistance = distance;
+			}
+		}
+
+		return found;
+	}
+
+	private int Column(int x)
+	{
+		return Math.min(COLUMNS - 1, Math.max(0, x / cellWidth));
+	}
+
+	private int Row(int y)
+	{
+		return Math.min(ROWS - 1, Math.max(0, y / cellHeight));
+	}
+}
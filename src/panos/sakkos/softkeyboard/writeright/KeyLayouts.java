@@ -0,0 +1,212 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.util.List;
+
+import android.inputmethodservice.Keyboard.Key;
+
+/**
+ * Computes the geometry of the keys of a keyboard for every set of shrunk letters.
+ * A layout is an array with the x, y, width and height of every key, in the order of
+ * Keyboard.getKeys(). Layouts are computed from the initial geometry, so they never
+ * drift, and the recently used ones are cached. Once the cache is full, the least
+ * recently used layout is computed over, so switching layouts doesn't allocate.
+ * A KeyLayouts belongs to a keyboard in one orientation, it must be created again
+ * when the keyboard is.
+ * @author Panos Sakkos
+ */
+
+public class KeyLayouts
+{
+	public static final int X = 0;
+	public static final int Y = 1;
+	public static final int WIDTH = 2;
+	public static final int HEIGHT = 3;
+	public static final int FIELDS = 4;
+
+	/* How many layouts are kept, a layout of the qwerty keyboard is about half a kilobyte */
+
+	private static final int CACHED_LAYOUTS = 64;
+
+	private int[] initial;
+	private int[] keyLetterBits;
+
+	private int shrunkWidth, shrunkHeight;
+	private int shiftX, shiftY;
+
+	/* The cached layouts, their masks and when they were last used */
+
+	private int[][] layouts = new int[CACHED_LAYOUTS][];
+	private int[] masks = new int[CACHED_LAYOUTS];
+	private long[] lastUses = new long[CACHED_LAYOUTS];
+	private int cached;
+	private long uses;
+
+	/**
+	 * @param keys The keys of the keyboard, at their initial geometry
+	 * @param keyLetterBits The TopKSelector bit of the letter of every key, 0 for keys that are never shrunk
+	 * @param shrunkWidth The width of a shrunk key
+	 * @param shrunkHeight The height of a shrunk key
+	 * @param shiftX How much a shrunk key is moved to the right
+	 * @param shiftY How much a shrunk key is moved down
+	 */
+
+	public KeyLayouts(List<Key> keys, int[] keyLetterBits, int shrunkWidth, int shrunkHeight, int shiftX, int shiftY)
+	{
+		this.keyLetterBits = keyLetterBits;
+		this.shrunkWidth = shrunkWidth;
+		this.shrunkHeight = shrunkHeight;
+		this.shiftX = shiftX;
+		this.shiftY = shiftY;
+
+		initial = new int[keys.size() * FIELDS];
+
+		for(int i = 0; i < keys.size(); i++)
+		{
+			Key key = keys.get(i);
+
+			initial[i * FIELDS + X] = key.x;
+			initial[i * FIELDS + Y] = key.y;
+			initial[i * FIELDS + WIDTH] = key.width;
+			initial[i * FIELDS + HEIGHT] = key.height;
+		}
+	}
+
+	/**
+	 * Returns the TopKSelector bit of the letter of every key
+	 */
+
+	public int[] GetKeyLetterBits()
+	{
+		return keyLetterBits;
+	}
+
+	/**
+	 * Returns the layout where no key is shrunk
+	 */
+
+	public int[] GetInitial()
+	{
+		return initial;
+	}
+
+	/**
+	 * Returns the layout where the keys of the letters in the mask are shrunk
+	 * @param shrunkMask A TopKSelector mask
+	 */
+
+	public int[] Get(int shrunkMask)
+	{
+		if(shrunkMask == 0)
+		{
+			return initial;
+		}
+
+		int leastRecentlyUsed = 0;
+
+		for(int i = 0; i < cached; i++)
+		{
+			if(masks[i] == shrunkMask)
+			{
+				lastUses[i] = ++uses;
+				return layouts[i];
+			}
+
+			if(lastUses[i] < lastUses[leastRecentlyUsed])
+			{
+				leastRecentlyUsed = i;
+			}
+		}
+
+		int slot = cached < CACHED_LAYOUTS ? cached++ : leastRecentlyUsed;
+
+		if(layouts[slot] == null)
+		{
+			layouts[slot] = new int[initial.length];
+		}
+
+		Compute(shrunkMask, layouts[slot]);
+		masks[slot] = shrunkMask;
+		lastUses[slot] = ++uses;
+
+		return layouts[slot];
+	}
+
+	/**
+	 * Returns how many layouts are cached
+	 */
+
+	public int Size()
+	{
+		return cached;
+	}
+
+	/**
+	 * Returns roughly how many bytes the cached layouts take
+	 */
+
+	public long GetCachedBytes()
+	{
+		return (long) cached * initial.length * 4;
+	}
+
+	public void Clear()
+	{
+		for(int i = 0; i < cached; i++)
+		{
+			layouts[i] = null;
+		}
+
+		cached = 0;
+	}
+
+	/**
+	 * Returns if the bounds of a key in a layout cover its bounds in another one,
+	 * so redrawing the key is enough to erase it from where it was
+	 */
+
+	public static boolean Covers(int[] layout, int[] previous, int key)
+	{
+		int i = key * FIELDS;
+
+		return layout[i + X] <= previous[i + X] && layout[i + Y] <= previous[i + Y]
+				&& layout[i + X] + layout[i + WIDTH] >= previous[i + X] + previous[i + WIDTH]
+				&& layout[i + Y] + layout[i + HEIGHT] >= previous[i + Y] + previous[i + HEIGHT];
+	}
+
+	private void Compute(int shrunkMask, int[] layout)
+	{
+		System.arraycopy(initial, 0, layout, 0, initial.length);
+
+		for(int key = 0; key < keyLetterBits.length; key++)
+		{
+			if((keyLetterBits[key] & shrunkMask) != 0)
+			{
+				int i = key * FIELDS;
+
+				layout[i + X] += shiftX;
+				layout[i + Y] += shiftY;
+				layout[i + WIDTH] = shrunkWidth;
+				layout[i + HEIGHT] = shrunkHeight;
+			}
+		}
+	}
+}
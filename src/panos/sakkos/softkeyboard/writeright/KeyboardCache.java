@@ -0,0 +1,115 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+
+/**
+ * Keeps the keyboards that were built from their XML layouts, for every display width,
+ * so a configuration change back to a known width reuses them instead of parsing
+ * the layouts again.
+ * @author Panos Sakkos
+ */
+
+public class KeyboardCache
+{
+	/* Enough for the keyboards of both orientations and a couple of other widths */
+
+	private static final int CACHED_KEYBOARDS = 12;
+
+	private LinkedHashMap<Long, LatinKeyboard> keyboards = new LinkedHashMap<Long, LatinKeyboard>(CACHED_KEYBOARDS, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override protected boolean removeEldestEntry(Map.Entry<Long, LatinKeyboard> eldest)
+		{
+			return size() > CACHED_KEYBOARDS;
+		}
+	};
+
+	private int builds;
+
+	/**
+	 * Returns the keyboard of a layout for a display width, building it if needed
+	 * @param xmlLayoutResId The layout of the keyboard
+	 * @param displayWidth The width the keyboard is built for
+	 */
+
+	public LatinKeyboard Get(Context context, int xmlLayoutResId, int displayWidth)
+	{
+		Long key = Long.valueOf(((long) xmlLayoutResId << 32) | (displayWidth & 0xFFFFFFFFL));
+		LatinKeyboard keyboard = keyboards.get(key);
+
+		if(keyboard == null)
+		{
+			keyboard = new LatinKeyboard(context, xmlLayoutResId);
+			keyboards.put(key, keyboard);
+			builds++;
+		}
+
+		return keyboard;
+	}
+
+	/**
+	 * Returns how many keyboards were built from their layouts
+	 */
+
+	public int GetBuilds()
+	{
+		return builds;
+	}
+
+	public int Size()
+	{
+		return keyboards.size();
+	}
+
+	/**
+	 * Drops the keyboards that were built for other display widths
+	 * @param displayWidth The width of the keyboards that are in use
+	 * @return How many keyboards were dropped
+	 */
+
+	public int Trim(int displayWidth)
+	{
+		int dropped = 0;
+		Iterator<Long> keys = keyboards.keySet().iterator();
+
+		while(keys.hasNext())
+		{
+			if((int) keys.next().longValue() != displayWidth)
+			{
+				keys.remove();
+				dropped++;
+			}
+		}
+
+		return dropped;
+	}
+
+	public void Clear()
+	{
+		keyboards.clear();
+	}
+}
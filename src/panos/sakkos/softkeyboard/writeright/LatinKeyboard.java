@@ -27,10 +27,23 @@ import android.content.res.XmlResourceParser;
 import android.inputmethodservice.Keyboard;
 import android.view.inputmethod.EditorInfo;
 
+import java.util.List;
+
 public class LatinKeyboard extends Keyboard 
 {
 
     private Key mEnterKey;
+    private int[] mLayout;
+    private KeyLayouts mKeyLayouts;
+    
+    /* Touches are resolved through a grid, with the targets of probable keys expanded */
+    
+    private KeyGrid mGrid;
+    private int[] mHitOffsetsY;
+    private float[] mHitWeights;
+    private int mHitExpansion;
+    private int mTouchX, mTouchY, mTouchedKey = -1;
+    private int[] mTouchedKeys = new int[1];
     
     public LatinKeyboard(Context context, int xmlLayoutResId) 
     {
@@ -45,7 +58,8 @@ public class LatinKeyboard extends Keyboard
     @Override
     protected Key createKeyFromXml(Resources res, Row parent, int x, int y, XmlResourceParser parser) 
     {
-        Key key = new LatinKey(res, parent, x, y, parser);
+        LatinKey key = new LatinKey(res, parent, x, y, parser);
+        key.mKeyboard = this;
         if (key.codes[0] == 10) 
         {
             mEnterKey = key;
@@ -94,8 +108,143 @@ public class LatinKeyboard extends Keyboard
         }
     }
     
+    /**
+     * Moves the keys to a layout of KeyLayouts. Only the keys whose geometry differs are written
+     * @param dirtyKeys Receives the indices of the keys that changed, can be null
+     * @return How many keys changed
+     */
+    int SetLayout(int[] layout, int[] dirtyKeys) 
+    {
+        if (layout == mLayout) 
+        {
+            return 0;
+        }
+        
+        List<Key> keys = getKeys();
+        int dirtyCount = 0;
+        
+        for (int i = 0; i < keys.size(); i++) 
+        {
+            Key key = keys.get(i);
+            int field = i * KeyLayouts.FIELDS;
+            
+            if (key.x == layout[field + KeyLayouts.X] && key.y == layout[field + KeyLayouts.Y] 
+                    && key.width == layout[field + KeyLayouts.WIDTH] && key.height == layout[field + KeyLayouts.HEIGHT]) 
+            {
+                continue;
+            }
+            
+            key.x = layout[field + KeyLayouts.X];
+            key.y = layout[field + KeyLayouts.Y];
+            key.width = layout[field + KeyLayouts.WIDTH];
+            key.height = layout[field + KeyLayouts.HEIGHT];
+            
+            if (dirtyKeys != null) 
+            {
+                dirtyKeys[dirtyCount] = i;
+            }
+            dirtyCount++;
+        }
+        
+        mLayout = layout;
+        return dirtyCount;
+    }
+    
+    /**
+     * Returns the layout the keys were last moved to, or null if they were never moved
+     */
+    int[] GetLayout() 
+    {
+        return mLayout;
+    }
+    
+    /**
+     * Keeps the layouts of the keys with the keyboard, so a cached keyboard comes with them
+     */
+    void SetKeyLayouts(KeyLayouts keyLayouts) 
+    {
+        mKeyLayouts = keyLayouts;
+    }
+    
+    /**
+     * Returns the layouts of the keys, or null if they were not computed yet
+     */
+    KeyLayouts GetKeyLayouts() 
+    {
+        return mKeyLayouts;
+    }
+    
+    /**
+     * Resolves the touches through a grid that covers the keys in every layout they may take
+     * @param hitExpansion How much the target of a key with weight 1 is expanded
+     */
+    void SetKeyGrid(KeyGrid grid, int hitExpansion) 
+    {
+        List<Key> keys = getKeys();
+        mHitOffsetsY = new int[keys.size()];
+        
+        for (int i = 0; i < keys.size(); i++) 
+        {
+            mHitOffsetsY[i] = keys.get(i).codes[0] == KEYCODE_CANCEL ? LatinKey.CANCEL_HIT_OFFSET : 0;
+        }
+        
+        mGrid = grid;
+        mHitExpansion = hitExpansion;
+        mTouchedKey = -1;
+    }
+    
+    /**
+     * Sets how much the target of every key is expanded, from 0 to 1 in the order of getKeys()
+     * @param weights The weights, kept by reference, or null for no expansion
+     */
+    void SetHitWeights(float[] weights) 
+    {
+        mHitWeights = weights;
+        mTouchedKey = -1;
+    }
+    
+    /**
+     * The key view asks for the keys near a touch and then which of them the touch is inside,
+     * so the touch is resolved here once and only the resolved key claims it.
+     */
+    @Override
+    public int[] getNearestKeys(int x, int y) 
+    {
+        if (mGrid == null || mLayout == null) 
+        {
+            return super.getNearestKeys(x, y);
+        }
+        
+        mTouchX = x;
+        mTouchY = y;
+        mTouchedKey = mGrid.Find(x, y, mLayout, mHitOffsetsY, mHitWeights, mHitExpansion);
+        
+        if (mTouchedKey < 0) 
+        {
+            return super.getNearestKeys(x, y);
+        }
+        
+        mTouchedKeys[0] = mTouchedKey;
+        return mTouchedKeys;
+    }
+    
+    /* Returns 1 if the key is the one a resolved touch went to, 0 if it is another one, -1 if the touch is not resolved */
+    private int Touched(Key key, int x, int y) 
+    {
+        if (mTouchedKey < 0 || x != mTouchX || y != mTouchY) 
+        {
+            return -1;
+        }
+        
+        return getKeys().get(mTouchedKey) == key ? 1 : 0;
+    }
+    
     static class LatinKey extends Keyboard.Key 
     {
+        /* How much lower than its bounds the key that closes the keyboard is touched */
+        static final int CANCEL_HIT_OFFSET = 10;
+        
+        private LatinKeyboard mKeyboard;
         
         public LatinKey(Resources res, Keyboard.Row parent, int x, int y, XmlResourceParser parser) 
         {
@@ -104,12 +253,20 @@ public class LatinKeyboard extends Keyboard
         
         /**
          * Overriding this method so that we can reduce the target area for the key that
-         * closes the keyboard. 
+         * closes the keyboard, and so that a touch resolved by the keyboard's grid goes
+         * only to the key it was resolved to.
          */
         @Override
         public boolean isInside(int x, int y) 
         {
-            return super.isInside(x, codes[0] == KEYCODE_CANCEL ? y - 10 : y);
+            int touched = mKeyboard == null ? -1 : mKeyboard.Touched(this, x, y);
+            
+            if (touched >= 0) 
+            {
+                return touched == 1;
+            }
+            
+            return super.isInside(x, codes[0] == KEYCODE_CANCEL ? y - CANCEL_HIT_OFFSET : y);
         }
     }
 
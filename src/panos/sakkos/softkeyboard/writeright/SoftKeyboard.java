@@ -19,31 +19,44 @@
 
 package panos.sakkos.softkeyboard.writeright;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.database.Cursor;
 import android.inputmethodservice.InputMethodService;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.Keyboard.Key;
 import android.inputmethodservice.KeyboardView;
-import android.os.SystemClock;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Vibrator;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.OrientationEventListener;
 import android.view.View;
+import android.view.WindowManager;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputConnection;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import panos.sakkos.softkeyboard.writeright.R;
 
 public class SoftKeyboard extends InputMethodService implements KeyboardView.OnKeyboardActionListener 
 {
     static final char NO_INPUT = 0;
+    
+    /* Logging of every key and prediction, off in releases so the key path doesn't log */
+    
+    static final boolean DEBUG = false;
+    
     private KeyboardView mInputView;
     
     private StringBuilder mComposing = new StringBuilder();
@@ -57,18 +70,59 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     private LatinKeyboard mQwertyKeyboard;
     
     private LatinKeyboard mCurKeyboard;
+    private KeyboardCache mKeyboardCache = new KeyboardCache();
     
     private String mWordSeparators;
+    private boolean[] mSeparatorTable;
+    
+    /* Key events sent to the editor, down and up for each key code, and the text of each character */
+    
+    private static final int KEY_EVENT_CODES = 128;
+    private static final int CHARACTER_STRINGS = 128;
+    private KeyEvent[] mKeyEvents = new KeyEvent[2 * KEY_EVENT_CODES];
+    private String[] mCharacterStrings = new String[CHARACTER_STRINGS];
     
     private Predictor predictor;
-    private int initialKeyHeight, initialKeyWidth;  
-    private int smallHeight, smallWidth;
     private int k = 26;
     private int continuousSuccesses = 0;
     private final int AGGRESIVE_THRESHOLD = 5;
     
-    private boolean unprobableKeysMoved = false;
-    List<Character> probableKeys;
+    /* Letters whose keys are shrunk as a TopKSelector mask, and the letter of every qwerty key */
+
+    private int shrunkMask = 0;
+    private int qwertyLetters = 0;
+    private int[] keyLetterBits;
+    private int[] dirtyKeys;
+    private KeyLayouts keyLayouts;
+    
+    /* Probable keys also take the touches close to them, keyWeights holds the probability of every key */
+    
+    private static final boolean HIT_TARGET_EXPANSION = true;
+    private float[] keyWeights;
+    private TopKSelector topKSelector = new TopKSelector();
+    private float[] predictions = new float[Predictor.latinLetters.length];
+    
+    /* Resizes for the predictions once per frame, a burst of keys is resized for its last key */
+    
+    private FrameScheduler layoutScheduler;
+    
+    /* Prepares the predictions and layouts of the probable next letters while waiting for the key */
+    
+    private IdlePrefetcher prefetcher;
+    
+    /* Latency of every stage of a keystroke and of loading, printed by dump() */
+    
+    private LatencyStats stats = new LatencyStats();
+    
+    /* Events of the keyboard, recorded only while a trace is started from dump() */
+    
+    private volatile KeystrokeTrace trace;
+    private static final String KEYSTROKE_TRACE = "keystrokes.trace";
+    private Handler handler;
+    
+    /* Dictionary sizes that the footprint of the model is projected to by dump() */
+    
+    private static final int[] FOOTPRINT_PROJECTIONS = { 100000, 1000000 };
 
     private boolean landscape = false;
     OrientationEventListener myOrientationEventListener; 
@@ -78,7 +132,14 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     
     private DataBaseHelper myDbHelper;    
     
+    /* Read from the database on the loader's thread, handed over when the predictor is bootstrapped */
+    
+    private int loadedK = 26, loadedContinuousSuccesses = 0;
+    private DictionaryLoader dictionaryLoader;
+    private static final String PREFIX_TREE_IMAGE = "writeright.trie";
+    
     private int editorInfo;
+    private EditorMirror editorMirror = new EditorMirror();
     private boolean autocomplete;
     
     /**
@@ -90,7 +151,20 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     {
         super.onCreate();
         Log.i("DEBUG", "onCreate");
+        Logging.SetLogger(new AndroidLogger());
         mWordSeparators = getResources().getString(R.string.word_separators);
+        mSeparatorTable = CharacterTable(mWordSeparators);
+        
+        float refreshRate = ((WindowManager) getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay().getRefreshRate();
+        handler = new Handler();
+        layoutScheduler = new FrameScheduler(handler, new Runnable()
+        {
+        	public void run()
+        	{
+        		ResizeForPredictions();
+        	}
+        }, refreshRate);
+        prefetcher = new IdlePrefetcher(Looper.myQueue());
 
         Init();
     }
@@ -102,6 +176,190 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
       super.onDestroy();
     }
     
+    /**
+     * Gives memory back to the system, more of it as the level gets more severe.
+     * Everything that is dropped is built or read again when it is needed
+     */
+    
+    @Override public void onTrimMemory(int level)
+    {
+    	super.onTrimMemory(level);
+    	TrimMemory(level);
+    }
+    
+    /**
+     * Prints the latency of every stage of a keystroke and of loading, with
+     * adb shell dumpsys input_method, so it can be read on any device
+     */
+    
+    @Override protected void dump(FileDescriptor fd, PrintWriter fout, String[] args)
+    {
+    	if(args != null && args.length > 0 && args[0].equals("trace"))
+    	{
+    		TraceCommand(args, fout);
+    		return;
+    	}
+    	
+    	/* Measuring walks the whole model, so it is done only when asked for */
+    	
+    	if(args != null && args.length > 0 && args[0].equals("footprint"))
+    	{
+    		if(PredictorReady())
+    		{
+    			ModelFootprint.Measure(predictor, ModelFootprint.Layout.ForThisVm()).Dump(fout, "  ", FOOTPRINT_PROJECTIONS);
+    		}
+    		else
+    		{
+    			fout.println("The predictor is not loaded yet");
+    		}
+    		return;
+    	}
+    	
+    	super.dump(fd, fout, args);
+    	
+    	fout.println("WriteRight:");
+    	fout.println("  k: " + k + ", continuous successes: " + continuousSuccesses
+    			+ ", dictionary: " + (dictionaryLoader == null ? DictionaryLoader.NOT_LOADED : dictionaryLoader.GetReadiness()));
+    	fout.println("  resizes: " + layoutScheduler.GetRuns() + " of " + layoutScheduler.GetRequests() + " requested"
+    			+ ", letters prefetched: " + prefetcher.GetSteps()
+    			+ ", prefetched predictions used: " + (PredictorReady() ? predictor.GetPrefetchHits() : 0));
+    	stats.Dump(fout, "  ");
+    }
+    
+    /*
+     * Records the events of the keyboard so a lag can be replayed off the device, see
+     * tools/TraceReplay. "trace start [events]" starts recording the last events, "trace save"
+     * writes them to the files of the keyboard and "trace stop" writes them and stops
+     */
+    
+    private void TraceCommand(String[] args, PrintWriter fout)
+    {
+    	String command = args.length > 1 ? args[1] : "";
+    	
+    	if(command.equals("start"))
+    	{
+    		final int capacity = args.length > 2 ? Integer.parseInt(args[2]) : KeystrokeTrace.DEFAULT_CAPACITY;
+    		
+    		/* Started on the thread of the keyboard, so the trace starts from the state of a key */
+    		
+    		handler.post(new Runnable()
+    		{
+    			public void run()
+    			{
+    				trace = new KeystrokeTrace(capacity, mWordSeparators, k, continuousSuccesses);
+    				Log.i("DEBUG", "KEYSTROKE TRACE STARTED");
+    			}
+    		});
+    		fout.println("Recording the last " + capacity + " events");
+    	}
+    	else if(command.equals("save") || command.equals("stop"))
+    	{
+    		KeystrokeTrace recorded = trace;
+    		
+    		if(command.equals("stop"))
+    		{
+    			trace = null;
+    		}
+    		
+    		if(recorded == null)
+    		{
+    			fout.println("No trace is recorded");
+    			return;
+    		}
+    		
+    		File file = new File(getFilesDir(), KEYSTROKE_TRACE);
+    		
+    		try
+    		{
+    			OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+    			recorded.Write(output);
+    			output.close();
+    			fout.println(recorded.GetCount() + " events (" + recorded.GetDropped() + " dropped) written to " + file.getPath());
+    		}
+    		catch(IOException ex)
+    		{
+    			fout.println("Writing " + file.getPath() + " failed: " + ex.getMessage());
+    		}
+    	}
+    	else
+    	{
+    		fout.println("usage: trace start [events] | trace save | trace stop");
+    	}
+    }
+    
+    /* Records an event of the keyboard if a trace is started */
+    
+    private void Trace(int event, int first, int second)
+    {
+    	KeystrokeTrace trace = this.trace;
+    	
+    	if(trace != null)
+    	{
+    		trace.Record(event, first, second);
+    	}
+    }
+    
+    /* Called instead of onTrimMemory before ICS */
+    
+    @Override public void onLowMemory()
+    {
+    	super.onLowMemory();
+    	TrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+    
+    private void TrimMemory(int level)
+    {
+    	long layouts = 0;
+    	long caches = 0;
+    	long compacted = 0;
+    	int flushed = 0;
+    	
+    	/* The keyboards of the other orientation are built again on rotation */
+    	
+    	int keyboards = mKeyboardCache.Trim(mLastDisplayWidth);
+    	
+    	if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+    	{
+    		if(keyLayouts != null)
+    		{
+    			layouts = keyLayouts.GetCachedBytes();
+    			keyLayouts.Clear();
+    		}
+    		
+    		if(PredictorReady())
+    		{
+    			caches = predictor.ShedCaches();
+    			
+    			/* The process may be killed from now on, so what was learned is written */
+    			
+    			try
+    			{
+    				long start = LatencyStats.Start();
+    				flushed = predictor.Flush();
+    				stats.Record(LatencyStats.SAVE, start);
+    				myDbHelper.UpdateEssentials(k, continuousSuccesses);
+    			}
+    			catch(Exception ex)
+    			{
+    				Log.e("DEBUG", "ERROR WHILE FLUSHING LEARNED WORDS");
+    			}
+    		}
+    	}
+    	
+    	/* Only a prefix tree read from an image can give memory back. Compacting drops even the
+    	 * subtrees that are held softly, which are read again from the image, so it is left for
+    	 * when memory is really short */
+    	
+    	if((level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) && PredictorReady())
+    	{
+    		compacted = predictor.Compact();
+    	}
+    	
+    	Log.i("DEBUG", "TRIM MEMORY LEVEL " + level + ": RECLAIMED ABOUT " + Long.toString(layouts + caches + compacted) + " BYTES"
+    			+ " (LAYOUTS " + layouts + ", PREDICTION CACHES " + caches + ", PREFIX TREE " + compacted + ")"
+    			+ ", " + keyboards + " KEYBOARDS DROPPED, " + flushed + " WORDS FLUSHED");
+    }
+    
     
     /**
      * This is the point where you can do all of your UI initialization.  It
@@ -111,40 +369,34 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     {
 		Log.i("DEBUG", "onInitializeInterface");		
 
-		if (mQwertyKeyboard != null) {
-            // Configuration changes can happen after the keyboard gets recreated,
-            // so we need to be able to re-build the keyboards if the available
-            // space has changed.
-            int displayWidth = getMaxWidth();
-            if (displayWidth == mLastDisplayWidth) return;
-            mLastDisplayWidth = displayWidth;
-
-            /* keyboard width changed, do the proper initializations for the UI */
-            
-            if (getResources().getConfiguration().orientation == 1 && landscape == true)
-            {
-            	landscape = false;
-                unprobableKeysMoved = false;
-            }
-            else if(getResources().getConfiguration().orientation == 2 && landscape == false)
-            {
-            	landscape = true;
-                unprobableKeysMoved = false;
-            }
-            
-		}
+        // Configuration changes can happen after the keyboard gets recreated,
+        // so we need to be able to re-build the keyboards if the available
+        // space has changed.
+        int displayWidth = getMaxWidth();
+		if (mQwertyKeyboard != null && displayWidth == mLastDisplayWidth) return;
+        mLastDisplayWidth = displayWidth;
 		
-        mQwertyKeyboard = new LatinKeyboard(this, R.xml.qwerty);
-        mSymbolsKeyboard = new LatinKeyboard(this, R.xml.symbols);
-        mSymbolsShiftedKeyboard = new LatinKeyboard(this, R.xml.symbols_shift);
+        /* keyboard width changed, do the proper initializations for the UI */
+        
+        landscape = getResources().getConfiguration().orientation == 2;
+		
+        /* Keyboards that were built for this width before are reused */
+        
+        mQwertyKeyboard = mKeyboardCache.Get(this, R.xml.qwerty, displayWidth);
+        mSymbolsKeyboard = mKeyboardCache.Get(this, R.xml.symbols, displayWidth);
+        mSymbolsShiftedKeyboard = mKeyboardCache.Get(this, R.xml.symbols_shift, displayWidth);
 
+		/* The new keyboards have their initial key sizes */
+		
+		shrunkMask = 0;
 		GetkeyInitialSizes();        
 
 		/* If the user changes orientation in the middle of typing a word, resize */
 		
-		if(mComposing.length() > 0)
+		if(mComposing.length() > 0 && PredictorReady())
 		{
-			TopKResize(predictor.GetPredictions());
+			predictor.GetPredictions(predictions);
+			TopKResize(predictions);
 		}
     }
     
@@ -183,6 +435,7 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
         //mComposing.setLength(0);
                 
         mPredictionOn = false;
+        editorMirror.Reset(attribute.initialSelStart, attribute.initialSelEnd);
         
         // We are now going to initialize our state based on the type of
         // text being edited.
@@ -269,6 +522,9 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
         {
             RestoreInitialSizes();
         }
+        
+        Trace(KeystrokeTrace.START_INPUT, attribute.initialSelStart, (mPredictionOn ? KeystrokeTrace.PREDICTION_ON : 0)
+        		| (PredictionFriendlyInput() ? KeystrokeTrace.PREDICTION_FRIENDLY : 0));
     }
 
     /**
@@ -278,11 +534,13 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     @Override public void onFinishInput() 
     {
         super.onFinishInput();
+        Trace(KeystrokeTrace.FINISH_INPUT, 0, 0);
         
 		Log.i("DEBUG", "onFinishInput");		
         
         // Clear current composing text and candidates.
         mComposing.setLength(0);
+        editorMirror.Reset(-1, -1);
         
         // We only hide the candidates window when finishing input on
         // a particular editor, to avoid popping the underlying application
@@ -295,7 +553,9 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
             mInputView.closing();
         }
         
-        WordseparatorTyped();
+        if (PredictorReady()) {
+            WordseparatorTyped();
+        }
     }
     
     @Override public void onStartInputView(EditorInfo attribute, boolean restarting) {
@@ -312,25 +572,30 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     @Override public void onUpdateSelection(int oldSelStart, int oldSelEnd, int newSelStart, int newSelEnd, int candidatesStart, int candidatesEnd) 
     {
         super.onUpdateSelection(oldSelStart, oldSelEnd, newSelStart, newSelEnd, candidatesStart, candidatesEnd);
-        Log.i("DEBUG", "onupdateSelection");		        
+        Trace(KeystrokeTrace.SELECTION, newSelStart, newSelEnd);
+        if(DEBUG) Log.i("DEBUG", "onupdateSelection");		        
+        
+        editorMirror.SelectionUpdated(newSelStart, newSelEnd);
 
 
 //code version 2 for fixing the reader-twitter bug ;). Code bellow was moved here from onrelease method
         
         if(PredictionFriendlyInput())
         {
-			if(CursorIsAtTheEnd() == false && isWordSeparator(FirstCharacterBeforeCursor()) == false)
+			/* Nothing is predicted until the predictor is loaded */
+			
+			if(PredictorReady() && CursorIsAtTheEnd() == false && isWordSeparator(FirstCharacterBeforeCursor()) == false)
 			{
 				mPredictionOn = false;
 				predictor.SetIdle();
 				RestoreInitialSizes();
-				Log.d("DEBUG", "CURSOR NOT AT END AND NOT separator; PREDICTOR SET TO IDLE");
+				if(DEBUG) Log.d("DEBUG", "CURSOR NOT AT END AND NOT separator; PREDICTOR SET TO IDLE");
 			}
-			else if(CursorIsAtTheEnd() && isWordSeparator(FirstCharacterBeforeCursor()))
+			else if(PredictorReady() && CursorIsAtTheEnd() && isWordSeparator(FirstCharacterBeforeCursor()))
 			{
 				mPredictionOn = true;
 				predictor.SetNotIdle();
-				Log.d("DEBUG", "CURSOR AT END AND separator; PREDICTOR SET TO IDLE");
+				if(DEBUG) Log.d("DEBUG", "CURSOR AT END AND separator; PREDICTOR SET TO IDLE");
 			}	 
 	
 	        // If the current selection in the text view changes, we should
@@ -341,6 +606,7 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
 	            InputConnection ic = getCurrentInputConnection();
 	            if (ic != null) {
 	            	ic.finishComposingText();
+	            	editorMirror.ComposingFinished();
 	            }
 	        }
         }
@@ -403,6 +669,7 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
         if (mComposing.length() > 0) 
         { 
             inputConnection.commitText(mComposing, mComposing.length());
+            editorMirror.Committed(mComposing, mComposing.length());
             mComposing.setLength(0);
             RestoreInitialSizes();
         }
@@ -436,8 +703,40 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
      */
     private void keyDownUp(int keyEventCode) 
     {
-        getCurrentInputConnection().sendKeyEvent(new KeyEvent(KeyEvent.ACTION_DOWN, keyEventCode));
-        getCurrentInputConnection().sendKeyEvent(new KeyEvent(KeyEvent.ACTION_UP, keyEventCode));
+        if (keyEventCode < KEY_EVENT_CODES) {
+            // The events carry no time, so the same ones can be sent every time.
+            if (mKeyEvents[2 * keyEventCode] == null) {
+                mKeyEvents[2 * keyEventCode] = new KeyEvent(KeyEvent.ACTION_DOWN, keyEventCode);
+                mKeyEvents[2 * keyEventCode + 1] = new KeyEvent(KeyEvent.ACTION_UP, keyEventCode);
+            }
+            getCurrentInputConnection().sendKeyEvent(mKeyEvents[2 * keyEventCode]);
+            getCurrentInputConnection().sendKeyEvent(mKeyEvents[2 * keyEventCode + 1]);
+        } else {
+            getCurrentInputConnection().sendKeyEvent(new KeyEvent(KeyEvent.ACTION_DOWN, keyEventCode));
+            getCurrentInputConnection().sendKeyEvent(new KeyEvent(KeyEvent.ACTION_UP, keyEventCode));
+        }
+        
+        // The editor decides what other keys do, so the mirror is read again.
+        if (keyEventCode == KeyEvent.KEYCODE_DEL) {
+            editorMirror.Deleted();
+        } else {
+            editorMirror.Invalidate();
+        }
+    }
+    
+    /**
+     * Helper that returns a character as a string, reusing the strings of the common characters.
+     */
+    private String CharacterString(int code) 
+    {
+        if (code < 0 || code >= CHARACTER_STRINGS) {
+            return String.valueOf((char) code);
+        }
+        
+        if (mCharacterStrings[code] == null) {
+            mCharacterStrings[code] = String.valueOf((char) code);
+        }
+        return mCharacterStrings[code];
     }
     
     /**
@@ -452,7 +751,9 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
                 if (keyCode >= '0' && keyCode <= '9') {
                     keyDownUp(keyCode - '0' + KeyEvent.KEYCODE_0);
                 } else {
-                    getCurrentInputConnection().commitText(String.valueOf((char) keyCode), 1);
+                    String text = CharacterString(keyCode);
+                    getCurrentInputConnection().commitText(text, 1);
+                    editorMirror.Committed(text, 1);
                 }
                 break;
         }
@@ -461,6 +762,7 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     /* Implementation of KeyboardViewListener */
 
     public void onKey(int primaryCode, int[] keyCodes) {
+        Trace(KeystrokeTrace.KEY, primaryCode, isInputViewShown() && mInputView.isShifted() ? 1 : 0);
         if (isWordSeparator(primaryCode)) {
             // Handle separator
             if (mComposing.length() > 0) {
@@ -503,6 +805,7 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
         }
         ic.commitText(text, 0);
         ic.endBatchEdit();
+        editorMirror.Committed(text, 0);
         updateShiftKeyState(getCurrentInputEditorInfo());
     }
         
@@ -511,9 +814,11 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
         if (length > 1) {
             mComposing.delete(length - 1, length);
             getCurrentInputConnection().setComposingText(mComposing, 1);
+            editorMirror.ComposingSet(mComposing);
         } else if (length > 0) {
             mComposing.setLength(0);
             getCurrentInputConnection().commitText("", 0);
+            editorMirror.Committed("", 0);
         } else {
             keyDownUp(KeyEvent.KEYCODE_DEL);
         }
@@ -550,10 +855,12 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
         if (isAlphabet(primaryCode) && mPredictionOn) {
             mComposing.append((char) primaryCode);
             getCurrentInputConnection().setComposingText(mComposing, 1);
+            editorMirror.ComposingSet(mComposing);
             updateShiftKeyState(getCurrentInputEditorInfo());
         } else {
-            getCurrentInputConnection().commitText(
-                    String.valueOf((char) primaryCode), 1);
+            String text = CharacterString(primaryCode);
+            getCurrentInputConnection().commitText(text, 1);
+            editorMirror.Committed(text, 1);
         }
     }
 
@@ -580,12 +887,29 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     
     public boolean isWordSeparator(int code) 
     {
-        String separators = getWordSeparators();
-        return separators.contains(String.valueOf((char)code));
+        return code >= 0 && code < mSeparatorTable.length && mSeparatorTable[code];
+    }
+    
+    /**
+     * Helper that builds a lookup table of the characters of a string, indexed by character.
+     */
+    private static boolean[] CharacterTable(String characters) 
+    {
+        int length = 0;
+        for (int i = 0; i < characters.length(); i++) {
+            length = Math.max(length, characters.charAt(i) + 1);
+        }
+        
+        boolean[] table = new boolean[length];
+        for (int i = 0; i < characters.length(); i++) {
+            table[characters.charAt(i)] = true;
+        }
+        return table;
     }
     
     public void swipeDown() 
     {
+    	Trace(KeystrokeTrace.SWIPE_DOWN, 0, 0);
         handleClose();
     }
     
@@ -596,44 +920,48 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
 
     public void swipeUp() 
     {
+    	Trace(KeystrokeTrace.SWIPE_UP, 0, 0);
     	CancelPrediction();    
     }
     
     public void swipeRight() 
     {
+    	Trace(KeystrokeTrace.SWIPE_RIGHT, 0, 0);
     	CancelPrediction();
     }
 
     public void swipeLeft() 
     {
+    	Trace(KeystrokeTrace.SWIPE_LEFT, 0, 0);
     	CancelPrediction();
     }
     
     public void onRelease(int primaryCode) 
     {
+    	Trace(KeystrokeTrace.RELEASE, primaryCode, 0);
     	vibrator.vibrate(25);
 
-    	/* Do nothing if the resize is disabled */
+    	/* Do nothing if the resize is disabled or the predictor is still loading */
     	
-    	if(mPredictionOn == false)
+    	if(mPredictionOn == false || PredictorReady() == false)
     	{
     		return;
     	}
 
     	if (primaryCode == Keyboard.KEYCODE_DELETE) 
         {
-        	Log.d("DEBUG", "BACKSPACE PRESSED");         	
+        	if(DEBUG) Log.d("DEBUG", "BACKSPACE PRESSED");         	
         	DeleteTyped();
         }
 
     	if (isWordSeparator(primaryCode)) 
         {
-    		Log.d("DEBUG", "WORD separator PRESSED");
+    		if(DEBUG) Log.d("DEBUG", "WORD separator PRESSED");
         	WordseparatorTyped();
         }
         else if (Character.isLetter(primaryCode))
         {
-    		Log.d("DEBUG", "CHARACTER PRESSED");
+    		if(DEBUG) Log.d("DEBUG", "CHARACTER PRESSED");
             CharacterTyped(primaryCode);   
         }
     	
@@ -652,13 +980,13 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
 		{
 			predictor.SetNotIdle();
 			RestoreInitialSizes();
-			Log.d("DEBUG", "WORD separator DETECTED; PREDICTOR NOT IDLE");			
+			if(DEBUG) Log.d("DEBUG", "WORD separator DETECTED; PREDICTOR NOT IDLE");			
 		}
 		else if(lastCharacter == NO_INPUT)
 		{
 			predictor.SetNotIdle();			
 			RestoreInitialSizes();
-			Log.d("DEBUG", "NO INPUT DETECTED; PREDICTOR NOT IDLE");			
+			if(DEBUG) Log.d("DEBUG", "NO INPUT DETECTED; PREDICTOR NOT IDLE");			
 		}
 		else if(GetLastWordBeforeCursor().length() > 0)
 		{
@@ -670,50 +998,73 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
 		{
 			predictor.SetIdle();
 			RestoreInitialSizes();
-			Log.d("DEBUG", "PREDICTOR IDLE");			
+			if(DEBUG) Log.d("DEBUG", "PREDICTOR IDLE");			
 		}
 	}
 
 	private void BackwardTopKResize() 
 	{
+		String lastWord = GetLastWordBeforeCursor();
+		
+		prefetcher.Cancel();
+		long start = LatencyStats.Start();
 		predictor.SetIdle(); predictor.SetNotIdle();
-		for(int i = 0; i < GetLastWordBeforeCursor().length(); i++)
+		for(int i = 0; i < lastWord.length(); i++)
 		{
 			try
 			{
-				predictor.CharacterTyped(GetLastWordBeforeCursor().charAt(i));
+				predictor.CharacterTyped(lastWord.charAt(i));
 			}
 			catch(Exception ex)
 			{
-				Log.d("DEBUG", ex.getMessage());
+				if(DEBUG) Log.d("DEBUG", ex.getMessage());
 			}
 		}
+		stats.Record(LatencyStats.PREDICTOR_UPDATE, start);
 		
-		TopKResize(predictor.GetPredictions());
+		layoutScheduler.Schedule();
 	}
 
 	private void CharacterTyped(int primaryCode) 
 	{
 		char character = (char) primaryCode; 
 		
+		/* What was prepared for this key is in the caches, the rest is out of date */
+		
+		prefetcher.Cancel();
+		
+		long start = LatencyStats.Start();
 		try 
 		{
 			predictor.CharacterTyped(character);
 		} 
 		catch (Exception e) 
 		{
-		    Log.d("DEBUG", "PREDICTOR.CHARACTER_TYPED: FAILED");
+		    if(DEBUG) Log.d("DEBUG", "PREDICTOR.CHARACTER_TYPED: FAILED");
 		}
+		stats.Record(LatencyStats.PREDICTOR_UPDATE, start);
 
-		HashMap<Character, Float> predictions = predictor.GetPredictions();
-
-		if( predictions.isEmpty())
+		/* The predictor sees every key, the keys are resized on the next frame */
+		
+		layoutScheduler.Schedule();
+	}
+	
+	/* Resizes the keys for the predictions of the word typed so far */
+	
+	private void ResizeForPredictions()
+	{
+		long start = LatencyStats.Start();
+		boolean predicted = predictor.GetPredictions(predictions);
+		stats.Record(LatencyStats.PREDICTION, start);
+		
+		if(predicted == false)
 		{
 			RestoreInitialSizes();
-			Log.d("DEBUG", "NO PREDICTIONS RETURNED");
+			if(DEBUG) Log.d("DEBUG", "NO PREDICTIONS RETURNED");
 		}
 		else
 		{			
+			stats.Count(LatencyStats.PREDICTIONS_SERVED);
 			TopKResize(predictions);        
 		}
 	}
@@ -722,8 +1073,9 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
 	{		
 		if(predictionCanceled)
 		{
-			Log.d("DEBUG", "NEW WORD TO BE ADDED TO PREDICTOR: " + GetLastWordBeforeCursor());
-			predictor.LearnNewWord(GetLastWordBeforeCursor()); 
+			String newWord = GetLastWordBeforeCursor();
+			if(DEBUG) Log.d("DEBUG", "NEW WORD TO BE ADDED TO PREDICTOR: " + newWord);
+			predictor.LearnNewWord(newWord); 
 			predictionCanceled = false;
 		}
 		else
@@ -734,7 +1086,7 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
 		try 
 		{
 			predictor.WordTyped();
-        	Log.i("DEBUG", "PREDICTOR NOT IDLE");
+        	if(DEBUG) Log.i("DEBUG", "PREDICTOR NOT IDLE");
 		}
 		catch (Exception e) 
 		{
@@ -746,50 +1098,92 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
 		RestoreInitialSizes();
 	}
     
-	/* Checks for external memory read/write availability. If available
-	 * and the clean_wordnet file does not exist, it copies it. If the predictor instance file
-	 * doesn't exist, it creates it. In case of external memory read/write unavailability, raises 
-	 * a keyboardInactive flag, in order to avoid exceptions etc. 
+	/* Opens the database, copying it from the assets the first time, and loads the
+	 * predictor on a background thread. Until the predictor is bootstrapped the keyboard
+	 * can be used, but the keys are not resized.
 	 */
     
     private void Init()
     {    	
-    	/* Create database if doesn't exist*/
+    	vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
 
-        myDbHelper = new DataBaseHelper((Context) this);
- 
-        try 
-        {
-        	myDbHelper.createDataBase();
-        	myDbHelper.openDataBase();
-        }
-        catch(Exception exception)
+        dictionaryLoader = new DictionaryLoader(new Callable<WordStore>()
         {
-        	Log.e("DEBUG", exception.getMessage());
-        }    	
+        	public WordStore call() throws Exception
+        	{
+            	/* Create database if doesn't exist*/
 
-        /* Load predictor essentials */
-        
-        Cursor cursor = myDbHelper.GetEssentials();
-        cursor.moveToNext();
-        k = cursor.getInt(0);
-        continuousSuccesses = cursor.getInt(1);
+                DataBaseHelper dbHelper = new DataBaseHelper((Context) SoftKeyboard.this);
+            	dbHelper.createDataBase();
+            	dbHelper.openDataBase();
+
+                /* Load predictor essentials */
+                
+                Cursor cursor = dbHelper.GetEssentials();
+                cursor.moveToNext();
+                loadedK = cursor.getInt(0);
+                loadedContinuousSuccesses = cursor.getInt(1);
+                cursor.close();
+                
+                return dbHelper;
+        	}
+        }, new File(getFilesDir(), PREFIX_TREE_IMAGE), new Runnable()
+        {
+        	public void run()
+        	{
+        		PredictorBootstrapped();
+        	}
+        }, new Runnable()
+        {
+        	public void run()
+        	{
+        		DictionaryReady();
+        	}
+        });
 
-        /* Create and load the predictor */
+        /* Create the predictor from the most frequent words and load the rest in the background */
         
-        try 
-    	{    		
-            long start = SystemClock.currentThreadTimeMillis();
-    		predictor = new Predictor(myDbHelper);
-    		long elapsed = SystemClock.currentThreadTimeMillis() - start;
-    		Log.i("DEBUG", "PREDICTOR CREATED IN " + Long.toString(elapsed) + " MILLISECONDS");
-    	} 
-    	catch (Exception e) 
+        dictionaryLoader.SetStats(stats);
+        dictionaryLoader.LoadAsync();
+    }
+    
+    /* Called when the predictor can be used, from now on the keys are resized */
+    
+    private void PredictorBootstrapped()
+    {
+    	myDbHelper = (DataBaseHelper) dictionaryLoader.GetStore();
+    	k = loadedK;
+    	continuousSuccesses = loadedContinuousSuccesses;
+    	predictor = dictionaryLoader.GetPredictor();
+    	prefetcher.SetPredictor(predictor);
+    	
+    	Log.i("DEBUG", "PREDICTOR READY");
+    	
+    	/* The word being typed was typed without the predictor, so it is predicted from the next word on */
+    	
+    	if(mComposing.length() > 0)
     	{
-    		Log.e("DEBUG", "LOAD PREDICTOR_INSTANCE: FAILED");
-		}        
+    		predictor.SetIdle();
+    	}
+    }
+    
+    /* Returns if the predictor is loaded, until then the keys are not resized */
+    
+    private boolean PredictorReady()
+    {
+    	return predictor != null;
+    }
+    
+    /* Called when the whole dictionary is published to the predictor */
+    
+    private void DictionaryReady()
+    {
+    	/* Predictions of the word being typed may have changed */
     	
-    	vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
+    	if(mPredictionOn && mComposing.length() > 0 && predictor.IsIdle() == false)
+    	{
+    		layoutScheduler.Schedule();
+    	}
     }
     
     /* Gets the height and width that keys have at start, in order to 
@@ -798,9 +1192,74 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     
     private void GetkeyInitialSizes()
     {    	
+    	List<Key> keys = mQwertyKeyboard.getKeys();
+    	keyLayouts = mQwertyKeyboard.GetKeyLayouts();
+
+    	/* A cached keyboard comes with its layouts, which hold the initial sizes */
+
+    	if(keyLayouts == null)
+    	{
+    		ComputeKeyLayouts(keys);
+    	}
+
+    	keyLetterBits = keyLayouts.GetKeyLetterBits();
+    	dirtyKeys = new int[keys.size()];
+    	keyWeights = new float[keys.size()];
+    	qwertyLetters = 0;
+
+    	for(int i = 0; i < keys.size(); i++)
+    	{
+    		qwertyLetters |= keyLetterBits[i];
+    	}
+
+    	prefetcher.SetKeyLayouts(keyLayouts, qwertyLetters);
+
+    	/* The keyboard may have been left resized */
+
+    	mQwertyKeyboard.SetLayout(keyLayouts.GetInitial(), null);
+    	mQwertyKeyboard.SetHitWeights(null);
+    }
+    
+    /* Computes the layouts of the qwerty keys and the grid that resolves touches on them */
+    
+    private void ComputeKeyLayouts(List<Key> keys)
+    {
+    	int smallWidth, smallHeight;
         smallWidth  = smallHeight = getMaxWidth() / 12;
-    	initialKeyHeight = mQwertyKeyboard.getKeys().get(0).height;
-    	initialKeyWidth = mQwertyKeyboard.getKeys().get(0).width;
+    	int initialKeyHeight = keys.get(0).height;
+
+    	/* Map every key to the bit of its letter once, so resizing doesn't look at the labels */
+
+    	int[] keyLetterBits = new int[keys.size()];
+    	int qwertyLetters = 0;
+
+    	for(int i = 0; i < keys.size(); i++)
+    	{
+    		Key key = keys.get(i);
+    		keyLetterBits[i] = KeyMustBeProccessed(key) ? TopKSelector.LetterBit(key.label.charAt(0)) : 0;
+    		qwertyLetters |= keyLetterBits[i];
+    	}
+
+    	/* Shrunk keys are moved down in portrait and to the right in landscape */
+
+    	if(landscape == false)
+    	{
+    		keyLayouts = new KeyLayouts(keys, keyLetterBits, smallWidth, smallHeight, 0, initialKeyHeight / 3);
+    	}
+    	else
+    	{
+    		keyLayouts = new KeyLayouts(keys, keyLetterBits, getMaxWidth() / 15, getMaxWidth() / 15, getMaxWidth() / 50, 0);
+    	}
+
+    	mQwertyKeyboard.SetKeyLayouts(keyLayouts);
+
+    	/* Touches are resolved through a grid that covers the keys both at their initial and at their shrunk size */
+
+    	int hitExpansion = HIT_TARGET_EXPANSION ? keys.get(0).width / 4 : 0;
+    	int[][] layouts = { keyLayouts.GetInitial(), keyLayouts.Get(qwertyLetters) };
+
+    	mQwertyKeyboard.SetKeyGrid(new KeyGrid(layouts, hitExpansion + LatinKeyboard.LatinKey.CANCEL_HIT_OFFSET,
+    			mQwertyKeyboard.getMinWidth(), mQwertyKeyboard.getHeight()), hitExpansion);
     }
     
     /*
@@ -810,130 +1269,139 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     
     private void RestoreInitialSizes()
     {
-    	boolean changed = false;
-		
-    	for(Key key : mQwertyKeyboard.getKeys())
-    	{
-        	if(KeyMustBeProccessed(key))
-    		{
-        		key.height = initialKeyHeight;
-    			key.width = initialKeyWidth;
-    		}    			
-
-        	if( unprobableKeysMoved == true && KeyMustBeProccessed(key) && probableKeys.contains(new Character(key.label.charAt(0))) == false)
-			{
-        		if(landscape == false)
-        		{
-        			key.y -= initialKeyHeight / 3;
-        		}
-        		else
-        		{
-        			key.x -= getMaxWidth() / 50;
-        		}
-        		
-        		changed = true;
-			}
-    	}
+    	/* A resize that is still waiting for its frame is out of date */
+    	
+    	layoutScheduler.Cancel();
+    	prefetcher.Cancel();
+    	ShrinkKeys(0);
     	
-    	if(changed)
+    	if(mQwertyKeyboard != null)
     	{
-    		unprobableKeysMoved = false;
+    		mQwertyKeyboard.SetHitWeights(null);
     	}
-
-    	if(mInputView != null)
-    		mInputView.invalidateAllKeys();
     }
     
-    private void TopKResize(HashMap<Character, Float> predictions)
+    /*
+     * Shrinks the keys whose letter is not among the top k predictions.
+     * predictions[i] is the probability of Predictor.latinLetters[i]
+     */
+    
+    private void TopKResize(float[] predictions)
     {    	    	
-    	/* Find top k next predicted letter */
+    	/* Find top k next predicted letters */
     	
-    	TreeSet<Float> sortedEvaluations = new TreeSet<Float>(predictions.values());    	
-        sortedEvaluations.remove(new Float(0.0));
-
-        /* Take top k evaluations */
-        
-        List<Float> topKEvaluations = new ArrayList<Float>();
-
-        while(sortedEvaluations.size() > 0 && topKEvaluations.size() <= k)
-        {
-        	Float evaluation = sortedEvaluations.last();
-        	sortedEvaluations.remove(evaluation);
-        	topKEvaluations.add(evaluation);
-        } 
-                
-    	RestoreInitialSizes();
+    	long start = LatencyStats.Start();
+    	int topKMask = topKSelector.Select(predictions, k);
+    	stats.Record(LatencyStats.SELECTION, start);
 
         /* If there are no predictions, do not resize the keys */
 
-        if(topKEvaluations.size() == 0)
+        if(topKMask == 0)
         {
-        	Log.d("DEBUG", "NO NON-ZERO VALUES FOUND");
+        	RestoreInitialSizes();
+        	if(DEBUG) Log.d("DEBUG", "NO NON-ZERO VALUES FOUND");
         	return; 
         }
  
-		List<Key> keys =  mQwertyKeyboard.getKeys();
-		probableKeys = new ArrayList<Character>();
-
-		/* Keep every probable next letter in the probableKeys list */
-
-		for(int i = 0; i < topKEvaluations.size(); i++)
+		/* Resize every key that it's letter is not in the top k */
+		
+        ShrinkKeys(qwertyLetters & ~topKMask);
+        
+        /* Expand the touch targets of the keys by their probability */
+        
+        for(int i = 0; i < keyWeights.length; i++)
         {
-        	for(Key key : keys)
-        	{
-        		if( KeyMustBeProccessed(key) && ProbabilitiesAreEqual(predictions.get(new Character(key.label.charAt(0))), topKEvaluations.get(i)))
-        		{
-        				probableKeys.add(new Character(key.label.charAt(0)));
-        		}
-        	}
+        	keyWeights[i] = keyLetterBits[i] == 0 ? 0 : predictions[Integer.numberOfTrailingZeros(keyLetterBits[i])];
         }
+        
+        mQwertyKeyboard.SetHitWeights(keyWeights);
+        
+        /* Prepare for the probable next letters once the keyboard is drawn */
+        
+        prefetcher.Start(predictions, topKMask, k, shrunkMask);
+    }
+    
+    /*
+     * Shrinks the keys of the letters in the mask and restores the rest, by moving the
+     * keyboard to the layout of the mask. Only the keys that change are redrawn, unless
+     * a key leaves behind an area that is not covered by its new bounds
+     */
+    
+    private void ShrinkKeys(int mask)
+    {
+    	/* Nothing to relayout or redraw */
+    	
+    	if(mask == shrunkMask)
+    	{
+    		return;
+    	}
+    	
+    	long start = LatencyStats.Start();
+    	int[] previous = mQwertyKeyboard.GetLayout();
+    	int[] layout = keyLayouts.Get(mask);
+    	int dirtyCount = mQwertyKeyboard.SetLayout(layout, dirtyKeys);
+    	boolean redrawAll = false;
 		
-		/* Resize every key that it's letter is not in the probableKeys list */
+		shrunkMask = mask;
+		stats.Record(LatencyStats.LAYOUT, start);
 		
-		for(Key key : keys)
+		/* The keys of the qwerty keyboard are drawn only while it is shown */
+		
+		if(mInputView == null || mInputView.getKeyboard() != mQwertyKeyboard)
 		{
-			if(KeyMustBeProccessed(key) && probableKeys.contains(new Character(key.label.charAt(0))) == false)
+			return;
+		}
+		
+		start = LatencyStats.Start();
+		
+		for(int i = 0; i < dirtyCount && redrawAll == false; i++)
+		{
+			redrawAll = KeyLayouts.Covers(layout, previous, dirtyKeys[i]) == false;
+		}
+		
+		if(redrawAll)
+		{
+			mInputView.invalidateAllKeys();
+		}
+		else
+		{
+			for(int i = 0; i < dirtyCount; i++)
 			{
-				if(landscape == false)
-				{
-					key.height = smallHeight;
-					key.width = smallWidth;
-				}
-				else
-				{
-					key.height = key.width = getMaxWidth() / 15;
-				}
-				
-				if( unprobableKeysMoved == false )
-				{
-		       		if(landscape == false)
-		       		{
-						key.y += initialKeyHeight / 3; 
-		       		}
-		       		else
-		       		{
-		       			key.x += getMaxWidth() / 50;
-		       		}
-				}
+				mInputView.invalidateKey(dirtyKeys[i]);
 			}
 		}
 		
-		unprobableKeysMoved = true;
-		mInputView.invalidateAllKeys();
-
+		stats.Record(LatencyStats.INVALIDATION, start);
     }
     
     /* Saves the predictor instance */
     
     private void OnClose()
     {
+    	dictionaryLoader.Cancel();
+    	layoutScheduler.Cancel();
+    	prefetcher.Cancel();
+    	
+    	/* Nothing was loaded, so nothing was learned */
+    	
+    	if(PredictorReady() == false)
+    	{
+    		return;
+    	}
+    	
     	try
     	{
-       		predictor.Save();
-   			Log.i("DEBUG", "PREDICTOR STATE SAVED");
+    		long start = LatencyStats.Start();
+    		
+    		/* Only what was learned since the last flush, the rest of the dictionary is in the store already */
+    		
+       		int flushed = predictor.Flush();
+       		stats.Record(LatencyStats.SAVE, start);
+   			Log.i("DEBUG", "PREDICTOR STATE SAVED, " + flushed + " WORDS FLUSHED");
+   			Log.i("DEBUG", "PREFETCHED PREDICTIONS USED " + predictor.GetPrefetchHits() + " TIMES, " + prefetcher.GetSteps() + " LETTERS PREFETCHED");
    	    	myDbHelper.UpdateEssentials(k, continuousSuccesses);
    			Log.i("DEBUG", "ESSENTIALS UPDATED");
-   			myDbHelper.UpgradeDatabase();
+   			myDbHelper.EvictWords();
     		Log.i("DEBUG", "DATABASE UPGRADED");
        	}
     	catch(Exception ex)
@@ -942,57 +1410,25 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
    		}    	
     }
     
-    /* Helper to avoid arithmetic instability */
-    
-    private boolean ProbabilitiesAreEqual(Float probabilityA, Float probabilityB)
-    {
-    	return (double) (probabilityA.floatValue() * 10) == (double) (probabilityB.floatValue() * 10);
-    }
-
     /* Helper which returns the last character at input */
     
     private char FirstCharacterBeforeCursor()
     {
-    	InputConnection ic = getCurrentInputConnection();
-    	CharSequence input =  ic.getTextBeforeCursor(100, 0);
+    	char lastCharacter = editorMirror.GetCharacterBeforeCursor(getCurrentInputConnection(), NO_INPUT);
     	
-    	if(input.length() == 0)
+    	if(lastCharacter == NO_INPUT)
     	{
-    		Log.e("DEBUG", "NO INPUT");
-    		return NO_INPUT;
+    		if(DEBUG) Log.e("DEBUG", "NO INPUT");
     	}
-    	else
-    	{
-//    		Log.e("DEBUG", Character.toString(input.charAt(ic.getTextBeforeCursor(100, 0).length() - 1)));
 
-    		return input.charAt(ic.getTextBeforeCursor(100, 0).length() - 1);
-    	}
-    }
-    
-    private char FirstCharacterAfterCursor()
-    {
-    	InputConnection ic = getCurrentInputConnection();
-    	CharSequence input =  ic.getTextAfterCursor(100, 0);
-    
-    	if(input.length() == 0)
-    	{
-    		Log.e("DEBUG", ".");
-    		return '.'; //return a separator
-    	}
-    	else
-    	{
-    		Log.e("DEBUG", Character.toString(input.charAt(0)));
-    		return input.charAt(0);
-    	}
+    	return lastCharacter;
     }
     
     /* Helper that returns if the cursor is at the end of input */
     
     private boolean CursorIsAtTheEnd()
     {
-    	InputConnection inputConnection = getCurrentInputConnection();
-    	CharSequence textAfterCursor = inputConnection.getTextAfterCursor(100, 0);
-    	return textAfterCursor.length() == 0;
+    	return editorMirror.CursorIsAtTheEnd(getCurrentInputConnection());
     }
     
     /* Helper which determines if the key must be processed */
@@ -1006,11 +1442,11 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
 
     private String GetLastWordBeforeCursor()
     {
-    	String input = getCurrentInputConnection().getTextBeforeCursor(100, 0).toString();
+    	CharSequence input = editorMirror.GetTextBeforeCursor(getCurrentInputConnection(), EditorMirror.WINDOW);
     	
     	if(input == null || input.length() == 0)
     	{
-    		Log.d("DEBUG", "NO LAST WORD FOUND");
+    		if(DEBUG) Log.d("DEBUG", "NO LAST WORD FOUND");
     		return null;
     	}
 
@@ -1023,14 +1459,20 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
     		}
     	}
     	
-    	return input.substring(lastSeparatorIndex, input.length()).trim();
+    	return input.subSequence(lastSeparatorIndex, input.length()).toString().trim();
     }
     
     /* Helper to cancel the current prediction */
     
 	private void CancelPrediction() 
 	{
+		if(PredictorReady() == false)
+		{
+			return;
+		}
+		
 		predictionCanceled = true;
+		stats.Count(LatencyStats.CANCELLATIONS);
     	predictor.PredictionCanceled();
     	RestoreInitialSizes();
     	FailedPrediction();
@@ -1043,11 +1485,12 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
 		if(k < 26)
 		{
 			k++;
-			Log.i("DEBUG", "PREDICTOR IS NOW LESS AGGRESSIVE");
+			stats.Count(LatencyStats.K_CHANGES);
+			if(DEBUG) Log.i("DEBUG", "PREDICTOR IS NOW LESS AGGRESSIVE");
 		}
 		
 		continuousSuccesses = 0;
-		Log.i("DEBUG", "FAILED PREDICTION");
+		if(DEBUG) Log.i("DEBUG", "FAILED PREDICTION");
 	}
 	
 	private void SuccessfullPrediction()
@@ -1061,11 +1504,12 @@ public class SoftKeyboard extends InputMethodService implements KeyboardView.OnK
 			if(k > 1)
 			{
 				k--;
-				Log.i("DEBUG", "PREDICTOR IS NOW MORE AGGRESSIVE");
+				stats.Count(LatencyStats.K_CHANGES);
+				if(DEBUG) Log.i("DEBUG", "PREDICTOR IS NOW MORE AGGRESSIVE");
 			}
 		}
 		
-		Log.i("DEBUG", "SUCCESSFUL PREDICTION");		
+		if(DEBUG) Log.i("DEBUG", "SUCCESSFUL PREDICTION");		
 	}
 
 	private boolean PredictionFriendlyInput()
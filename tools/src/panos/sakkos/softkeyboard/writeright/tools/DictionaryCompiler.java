@@ -0,0 +1,638 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import panos.sakkos.softkeyboard.writeright.InMemoryWordStore;
+import panos.sakkos.softkeyboard.writeright.TrieImageWriter;
+
+/**
+ * Compiles a frequency list (the format of words.txt: id, word, part of speech
+ * and frequency per line) into the dictionary of the keyboard. Unlike build_query.c,
+ * the frequency of every word is kept as its prior popularity, so the predictor gives
+ * useful predictions before the user types anything. The priors have a column of their
+ * own, the usage column is only what the user types.
+ *
+ * The list is streamed, words that appear more than once (with different parts of speech)
+ * are merged, and the words are written in descending frequency, which the staged
+ * dictionary loading depends on.
+ *
+ * Outputs, any combination of:
+ *   --sql file   SQL script that creates and seeds the tables (run it with sqlite3)
+ *   --db file    SQLite database, needs an SQLite JDBC driver on the classpath
+ *   --trie file  Binary prefix tree image, see TrieImageWriter
+ * Options:
+ *   --words n    Compile only the first n distinct words of the list
+ *   --ceiling n  Prior popularity of the most frequent word (default 10), 0 disables priors
+ * @author Panos Sakkos
+ */
+
+public class DictionaryCompiler
+{
+	private static final int DEFAULT_PRIOR_CEILING = 10;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	private static final int LETTERS = 26;
+
+	/* Nodes up to this depth look their children up in a table instead of their sibling list */
+
+	private static final int DENSE_DEPTH = 4;
+
+	private int priorCeiling = DEFAULT_PRIOR_CEILING;
+	private int maxWords = Integer.MAX_VALUE;
+
+	/* Compact prefix tree, nodes are indices to these arrays and node 0 is the root.
+	 * Children of a node are kept in a sibling list, which is sorted by letter in Finish */
+
+	private int nodes;
+	private byte[] letter = new byte[INITIAL_CAPACITY];
+	private int[] firstChild = new int[INITIAL_CAPACITY];
+	private int[] nextSibling = new int[INITIAL_CAPACITY];
+	private int[] size = new int[INITIAL_CAPACITY];
+	private long[] frequency = new long[INITIAL_CAPACITY];
+	private int[] popularity = new int[INITIAL_CAPACITY];
+	private int[] wordOf = new int[INITIAL_CAPACITY];
+	private int[] denseSlot = new int[INITIAL_CAPACITY];
+
+	private int denseSlots;
+	private int[] dense = new int[LETTERS * 1024];
+
+	/* The distinct words in order of first appearance and the node where each ends */
+
+	private int words;
+	private String[] word = new String[INITIAL_CAPACITY];
+	private int[] terminal = new int[INITIAL_CAPACITY];
+	private int[] prior;
+
+	private int[] path = new int[64];
+	private char[] buffer = new char[64];
+
+	public DictionaryCompiler()
+	{
+		nodes = 1;
+		firstChild[0] = -1;
+		nextSibling[0] = -1;
+		size[0] = 1;
+		wordOf[0] = -1;
+		denseSlot[0] = denseSlots++;
+	}
+
+	public void SetPriorCeiling(int priorCeiling)
+	{
+		this.priorCeiling = priorCeiling;
+	}
+
+	/**
+	 * Reads only the first maxWords distinct words of the list, in the order of the list.
+	 * words.txt is in descending frequency, so of it these are the most frequent ones
+	 */
+
+	public void SetMaxWords(int maxWords)
+	{
+		this.maxWords = maxWords;
+	}
+
+	/**
+	 * Reads a frequency list, one word per line. Lines without a word and a frequency,
+	 * and words that the keyboard can't type, are skipped
+	 */
+
+	public void Read(BufferedReader reader) throws IOException
+	{
+		String line;
+		while(words < maxWords && (line = reader.readLine()) != null)
+		{
+			ReadLine(line);
+		}
+	}
+
+	private void ReadLine(String line)
+	{
+		int length = line.length();
+
+		/* The first column is an id */
+
+		int i = SkipToken(line, SkipWhitespace(line, 0));
+
+		if(i == 0 || i == length)
+		{
+			return;
+		}
+
+		i = SkipWhitespace(line, i);
+
+		int wordLength = 0;
+		while(i < length && Character.isWhitespace(line.charAt(i)) == false)
+		{
+			char character = Character.toLowerCase(line.charAt(i));
+
+			/* Only words that can be typed with the latin letter keys */
+
+			if(character < 'a' || character > 'z')
+			{
+				return;
+			}
+
+			if(wordLength == buffer.length)
+			{
+				buffer = Arrays.copyOf(buffer, wordLength * 2);
+				path = Arrays.copyOf(path, wordLength * 2);
+			}
+
+			buffer[wordLength++] = character;
+			i++;
+		}
+
+		/* Skip the part of speech, the frequency is the last column */
+
+		i = SkipWhitespace(line, SkipToken(line, SkipWhitespace(line, i)));
+
+		long count = 0;
+		int digits = 0;
+		while(i < length && line.charAt(i) >= '0' && line.charAt(i) <= '9')
+		{
+			count = count * 10 + (line.charAt(i) - '0');
+			digits++;
+			i++;
+		}
+
+		if(wordLength > 0 && digits > 0)
+		{
+			Add(wordLength, count);
+		}
+	}
+
+	private static int SkipWhitespace(String line, int i)
+	{
+		while(i < line.length() && Character.isWhitespace(line.charAt(i)))
+		{
+			i++;
+		}
+
+		return i;
+	}
+
+	private static int SkipToken(String line, int i)
+	{
+		while(i < line.length() && Character.isWhitespace(line.charAt(i)) == false)
+		{
+			i++;
+		}
+
+		return i;
+	}
+
+	/* Adds the word in buffer, or adds its frequency if it was already added */
+
+	private void Add(int wordLength, long count)
+	{
+		int node = 0;
+		for(int i = 0; i < wordLength; i++)
+		{
+			path[i] = node;
+			node = Child(node, (byte) (buffer[i] - 'a'), i + 1);
+		}
+
+		if(wordOf[node] >= 0)
+		{
+			frequency[node] += count;
+			return;
+		}
+
+		/* Same sizes as Trie.Learn gives a new word: every node that the word passes through */
+
+		for(int i = 0; i < wordLength; i++)
+		{
+			size[path[i]]++;
+		}
+
+		if(words == word.length)
+		{
+			word = Arrays.copyOf(word, words * 2);
+			terminal = Arrays.copyOf(terminal, words * 2);
+		}
+
+		wordOf[node] = words;
+		frequency[node] = count;
+		word[words] = new String(buffer, 0, wordLength);
+		terminal[words] = node;
+		words++;
+	}
+
+	/* Returns the child of node for the given letter, creating it if needed */
+
+	private int Child(int node, byte childLetter, int childDepth)
+	{
+		int slot = denseSlot[node];
+		int child;
+
+		if(slot >= 0)
+		{
+			child = dense[slot * LETTERS + childLetter];
+
+			if(child > 0)
+			{
+				return child;
+			}
+		}
+		else
+		{
+			for(child = firstChild[node]; child >= 0; child = nextSibling[child])
+			{
+				if(letter[child] == childLetter)
+				{
+					return child;
+				}
+			}
+		}
+
+		if(nodes == letter.length)
+		{
+			Grow();
+		}
+
+		int created = nodes++;
+		letter[created] = childLetter;
+		firstChild[created] = -1;
+		nextSibling[created] = firstChild[node];
+		size[created] = 1;
+		wordOf[created] = -1;
+		denseSlot[created] = -1;
+		firstChild[node] = created;
+
+		if(slot >= 0)
+		{
+			dense[slot * LETTERS + childLetter] = created;
+		}
+
+		if(childDepth < DENSE_DEPTH)
+		{
+			if((denseSlots + 1) * LETTERS > dense.length)
+			{
+				dense = Arrays.copyOf(dense, dense.length * 2);
+			}
+
+			denseSlot[created] = denseSlots++;
+		}
+
+		return created;
+	}
+
+	/* Relinks every sibling list in alphabetical order */
+
+	private void SortChildren()
+	{
+		int[] children = new int[LETTERS];
+
+		for(int node = 0; node < nodes; node++)
+		{
+			int count = 0;
+			for(int child = firstChild[node]; child >= 0; child = nextSibling[child])
+			{
+				int i = count++;
+				while(i > 0 && letter[children[i - 1]] > letter[child])
+				{
+					children[i] = children[i - 1];
+					i--;
+				}
+				children[i] = child;
+			}
+
+			int next = -1;
+			for(int i = count - 1; i >= 0; i--)
+			{
+				nextSibling[children[i]] = next;
+				next = children[i];
+			}
+			firstChild[node] = next;
+		}
+	}
+
+	private void Grow()
+	{
+		int capacity = letter.length * 2;
+
+		letter = Arrays.copyOf(letter, capacity);
+		firstChild = Arrays.copyOf(firstChild, capacity);
+		nextSibling = Arrays.copyOf(nextSibling, capacity);
+		size = Arrays.copyOf(size, capacity);
+		frequency = Arrays.copyOf(frequency, capacity);
+		popularity = Arrays.copyOf(popularity, capacity);
+		wordOf = Arrays.copyOf(wordOf, capacity);
+		denseSlot = Arrays.copyOf(denseSlot, capacity);
+	}
+
+	/**
+	 * Turns the frequencies into prior popularities and sums them up the tree,
+	 * the same way Trie.Learn adds the usage of a word to every node it passes through
+	 */
+
+	public void Finish()
+	{
+		SortChildren();
+
+		long maxFrequency = 1;
+		for(int i = 0; i < words; i++)
+		{
+			maxFrequency = Math.max(maxFrequency, frequency[terminal[i]]);
+		}
+
+		prior = new int[words];
+		for(int i = 0; i < words; i++)
+		{
+			prior[i] = Prior(frequency[terminal[i]], maxFrequency);
+			popularity[terminal[i]] = prior[i];
+		}
+
+		SumPopularity(0);
+	}
+
+	/* Log scaled, so that the usage of the user overtakes the priors quickly */
+
+	private int Prior(long count, long maxFrequency)
+	{
+		if(priorCeiling == 0 || count <= 0)
+		{
+			return 0;
+		}
+
+		if(maxFrequency <= 1)
+		{
+			return priorCeiling;
+		}
+
+		return 1 + (int) Math.round((priorCeiling - 1) * Math.log(count) / Math.log(maxFrequency));
+	}
+
+	private int SumPopularity(int node)
+	{
+		int sum = popularity[node];
+		for(int child = firstChild[node]; child >= 0; child = nextSibling[child])
+		{
+			sum += SumPopularity(child);
+		}
+
+		popularity[node] = sum;
+		return sum;
+	}
+
+	/**
+	 * Returns the indices of the words in descending frequency, ties in order of appearance
+	 */
+
+	private int[] WordsByFrequency()
+	{
+		long[] keys = new long[words];
+		for(int i = 0; i < words; i++)
+		{
+			long count = Math.min(frequency[terminal[i]], Integer.MAX_VALUE);
+			keys[i] = ((Integer.MAX_VALUE - count) << 32) | i;
+		}
+
+		Arrays.sort(keys);
+
+		int[] order = new int[words];
+		for(int i = 0; i < words; i++)
+		{
+			order[i] = (int) (keys[i] & 0xFFFFFFFFL);
+		}
+
+		return order;
+	}
+
+	public void WriteSql(Writer writer) throws IOException
+	{
+		writer.write("BEGIN TRANSACTION;\n");
+		writer.write("CREATE TABLE IF NOT EXISTS Words (_id INTEGER PRIMARY KEY, word TEXT, usage NUMERIC, timestamp TEXT, prior NUMERIC DEFAULT 0);\n");
+		writer.write("CREATE TABLE IF NOT EXISTS Essentials (_id INTEGER PRIMARY KEY, k NUMERIC, continuous_successes NUMERIC);\n");
+
+		int[] order = WordsByFrequency();
+		for(int id = 0; id < order.length; id++)
+		{
+			writer.write("INSERT INTO Words VALUES (");
+			writer.write(Integer.toString(id));
+			writer.write(", '");
+			writer.write(word[order[id]]);
+			writer.write("', 0, '0', ");
+			writer.write(Integer.toString(prior[order[id]]));
+			writer.write(");\n");
+		}
+
+		writer.write("INSERT INTO Essentials VALUES (0, 26, 0);\n");
+		writer.write("COMMIT;\n");
+		writer.flush();
+	}
+
+	public void WriteDatabase(String path) throws SQLException
+	{
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+
+		try
+		{
+			connection.setAutoCommit(false);
+
+			Statement statement = connection.createStatement();
+			statement.executeUpdate("DROP TABLE IF EXISTS Words");
+			statement.executeUpdate("CREATE TABLE Words (_id INTEGER PRIMARY KEY, word TEXT, usage NUMERIC, timestamp TEXT, prior NUMERIC DEFAULT 0)");
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS Essentials (_id INTEGER PRIMARY KEY, k NUMERIC, continuous_successes NUMERIC)");
+			statement.executeUpdate("INSERT OR REPLACE INTO Essentials VALUES (0, 26, 0)");
+			statement.close();
+
+			PreparedStatement insert = connection.prepareStatement("INSERT INTO Words VALUES (?, ?, 0, '0', ?)");
+			int[] order = WordsByFrequency();
+
+			for(int id = 0; id < order.length; id++)
+			{
+				insert.setInt(1, id);
+				insert.setString(2, word[order[id]]);
+				insert.setInt(3, prior[order[id]]);
+				insert.addBatch();
+
+				if(id % 10000 == 9999)
+				{
+					insert.executeBatch();
+				}
+			}
+
+			insert.executeBatch();
+			insert.close();
+			connection.commit();
+		}
+		finally
+		{
+			connection.close();
+		}
+	}
+
+	public void WriteTrie(OutputStream output) throws IOException
+	{
+		/* Same fingerprint as the keyboard computes over the database this compiler writes */
+
+		long fingerprint = TrieImageWriter.FINGERPRINT_SEED;
+		int[] order = WordsByFrequency();
+		for(int id = 0; id < order.length; id++)
+		{
+			fingerprint = TrieImageWriter.Fingerprint(fingerprint, word[order[id]]);
+		}
+
+		TrieImageWriter image = new TrieImageWriter(words, fingerprint, size[0], popularity[0]);
+
+		for(int child = firstChild[0]; child >= 0; child = nextSibling[child])
+		{
+			image.BeginSubTrie(letter[child], size[child], popularity[child]);
+			WriteNodes(image, child);
+		}
+
+		image.WriteTo(output);
+	}
+
+	private void WriteNodes(TrieImageWriter image, int node)
+	{
+		int childMask = 0;
+		for(int child = firstChild[node]; child >= 0; child = nextSibling[child])
+		{
+			childMask |= 1 << letter[child];
+		}
+
+		if(wordOf[node] >= 0)
+		{
+			childMask |= TrieImageWriter.TERMINAL;
+		}
+
+		image.WriteNode(size[node], popularity[node], childMask);
+
+		for(int child = firstChild[node]; child >= 0; child = nextSibling[child])
+		{
+			WriteNodes(image, child);
+		}
+	}
+
+	/**
+	 * Puts the words in a store, most frequent first, with their prior popularity and no usage,
+	 * the same as the database gets. Used to run the predictor off the device
+	 */
+
+	public void WriteStore(InMemoryWordStore store)
+	{
+		int[] order = WordsByFrequency();
+		for(int id = 0; id < order.length; id++)
+		{
+			store.Put(word[order[id]], prior[order[id]], 0, 0);
+		}
+	}
+
+	/**
+	 * Returns the frequency of every word in the list, in the order WriteStore puts them
+	 */
+
+	public long[] Frequencies()
+	{
+		int[] order = WordsByFrequency();
+		long[] frequencies = new long[order.length];
+
+		for(int id = 0; id < order.length; id++)
+		{
+			frequencies[id] = frequency[terminal[order[id]]];
+		}
+
+		return frequencies;
+	}
+
+	public int WordCount()
+	{
+		return words;
+	}
+
+	public int NodeCount()
+	{
+		return nodes;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		DictionaryCompiler compiler = new DictionaryCompiler();
+		String input = null, sql = null, db = null, trie = null;
+
+		for(int i = 0; i < args.length; i++)
+		{
+			if(args[i].equals("--sql"))
+				sql = args[++i];
+			else if(args[i].equals("--db"))
+				db = args[++i];
+			else if(args[i].equals("--trie"))
+				trie = args[++i];
+			else if(args[i].equals("--words"))
+				compiler.SetMaxWords(Integer.parseInt(args[++i]));
+			else if(args[i].equals("--ceiling"))
+				compiler.SetPriorCeiling(Integer.parseInt(args[++i]));
+			else
+				input = args[i];
+		}
+
+		if(sql == null && db == null && trie == null)
+		{
+			System.err.println("usage: DictionaryCompiler [--words n] [--ceiling n] [--sql file] [--db file] [--trie file] [words.txt]");
+			System.exit(1);
+		}
+
+		long start = System.currentTimeMillis();
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input == null ? System.in : new FileInputStream(input), "UTF-8"), 1 << 16);
+		compiler.Read(reader);
+		reader.close();
+		compiler.Finish();
+
+		if(sql != null)
+		{
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(sql), "UTF-8"), 1 << 16);
+			compiler.WriteSql(writer);
+			writer.close();
+		}
+
+		if(db != null)
+		{
+			compiler.WriteDatabase(db);
+		}
+
+		if(trie != null)
+		{
+			OutputStream output = new BufferedOutputStream(new FileOutputStream(trie), 1 << 16);
+			compiler.WriteTrie(output);
+			output.close();
+		}
+
+		System.err.println("compiled " + compiler.WordCount() + " words, " + compiler.NodeCount() + " nodes in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
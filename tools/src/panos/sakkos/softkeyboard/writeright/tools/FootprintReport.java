@@ -0,0 +1,137 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright.tools;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+
+import panos.sakkos.softkeyboard.writeright.InMemoryWordStore;
+import panos.sakkos.softkeyboard.writeright.ModelFootprint;
+import panos.sakkos.softkeyboard.writeright.Predictor;
+
+/**
+ * Loads the dictionary into a predictor and reports how much heap every structure of
+ * the model takes, see ModelFootprint, with projections to larger dictionaries.
+ *
+ * Options:
+ *   --dictionary file  Frequency list of the dictionary (default Database/words.txt)
+ *   --words n          Use only the first n distinct words of the list
+ *   --layout name      dalvik or hotspot (default dalvik, the layout of the devices)
+ *   --project n,n,...  Dictionary sizes to project to (default 100000,250000,1000000)
+ *   --verify           Also measure the heap that the predictor takes on this JVM, to
+ *                      check the hotspot estimate against
+ * @author Panos Sakkos
+ */
+
+public class FootprintReport
+{
+	public static void main(String[] args) throws Exception
+	{
+		String dictionary = "Database/words.txt";
+		int maxWords = Integer.MAX_VALUE;
+		ModelFootprint.Layout layout = ModelFootprint.Layout.DALVIK;
+		int[] projections = { 100000, 250000, 1000000 };
+		boolean verify = false;
+
+		for(int i = 0; i < args.length; i++)
+		{
+			if(args[i].equals("--dictionary"))
+				dictionary = args[++i];
+			else if(args[i].equals("--words"))
+				maxWords = Integer.parseInt(args[++i]);
+			else if(args[i].equals("--layout"))
+				layout = args[++i].equals("hotspot") ? ModelFootprint.Layout.HOTSPOT : ModelFootprint.Layout.DALVIK;
+			else if(args[i].equals("--project"))
+			{
+				String[] sizes = args[++i].split(",");
+				projections = new int[sizes.length];
+
+				for(int j = 0; j < sizes.length; j++)
+				{
+					projections[j] = Integer.parseInt(sizes[j].trim());
+				}
+			}
+			else if(args[i].equals("--verify"))
+				verify = true;
+			else
+			{
+				System.err.println("usage: FootprintReport [--dictionary words.txt] [--words n] [--layout dalvik|hotspot] [--project n,n,...] [--verify]");
+				System.exit(2);
+			}
+		}
+
+		DictionaryCompiler compiler = new DictionaryCompiler();
+		compiler.SetMaxWords(maxWords);
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(dictionary), "UTF-8"), 1 << 16);
+		compiler.Read(reader);
+		reader.close();
+		compiler.Finish();
+
+		InMemoryWordStore store = new InMemoryWordStore();
+		compiler.WriteStore(store);
+		compiler = null;
+
+		long before = UsedHeap();
+		Predictor predictor = new Predictor(store);
+		long measured = UsedHeap() - before;
+
+		ModelFootprint footprint = ModelFootprint.Measure(predictor, layout);
+
+		PrintWriter writer = new PrintWriter(System.out);
+		footprint.Dump(writer, "", projections);
+
+		if(verify)
+		{
+			long estimated = footprint.GetTotalBytes();
+
+			writer.println("measured: " + measured + " bytes, estimated: " + estimated + " bytes"
+				+ String.format(" (%+.1f%%)", measured == 0 ? 0.0 : 100.0 * (estimated - measured) / measured));
+		}
+
+		writer.flush();
+	}
+
+	private static long UsedHeap() throws InterruptedException
+	{
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+
+		/* Collect until the heap stops shrinking */
+
+		for(int i = 0; i < 10; i++)
+		{
+			System.gc();
+			Thread.sleep(50);
+
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if(now >= used)
+			{
+				return now;
+			}
+
+			used = now;
+		}
+
+		return used;
+	}
+}
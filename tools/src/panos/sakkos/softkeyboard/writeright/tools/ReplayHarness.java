@@ -0,0 +1,539 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package panos.sakkos.softkeyboard.writeright.tools;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import panos.sakkos.softkeyboard.writeright.InMemoryWordStore;
+import panos.sakkos.softkeyboard.writeright.Predictor;
+import panos.sakkos.softkeyboard.writeright.TopKSelector;
+import panos.sakkos.softkeyboard.writeright.WordStore;
+
+/**
+ * Replays text through the predictor the way the keyboard types it: every letter goes
+ * through CharacterTyped, GetPredictions and the top k selection of TopKResize, and every
+ * word ends with WordTyped, so the predictor learns as it goes.
+ *
+ * The text is either a file (--text), split into words of latin letters, or words drawn
+ * from the frequency list of the dictionary by their frequency, with a fixed seed. The
+ * replay is deterministic: for the same arguments the hit rates are always the same,
+ * only the latencies depend on the machine.
+ *
+ * Reports, one "name value" per line:
+ *   latency_p50_us, latency_p99_us, latency_p999_us   Per keystroke, after the warm up
+ *   alloc_bytes_per_keystroke, alloc_bytes_per_letter -1 if the JVM can't measure it
+ *   predicted                                         Keystrokes that had predictions
+ *   hit_rate_k<k>, shrunk_k<k>                        For every k up to --max-k, how often the typed
+ *                                                     key was not shrunk and how many keys were
+ * Options:
+ *   --dictionary file  Frequency list of the dictionary (default Database/words.txt)
+ *   --words n          Use only the first n distinct words of the list
+ *   --text file        Text to replay, instead of sampling the list
+ *   --sample n         Words to sample from the list (default 100000)
+ *   --seed n           Seed of the sampling (default 1)
+ *   --k n              k of the selection that is timed (default 2)
+ *   --max-k n          Largest k to report the hit rate of (default 8)
+ *   --warmup n         Words replayed before measuring (default 10000)
+ * Gates, the exit code is 1 if one fails:
+ *   --max-p99 us, --max-alloc bytes, --min-hit k:rate
+ * @author Panos Sakkos
+ */
+
+public class ReplayHarness
+{
+	private static final int DEFAULT_SAMPLE = 100000;
+	private static final int DEFAULT_WARMUP = 10000;
+
+	private Predictor predictor;
+	private TopKSelector topKSelector = new TopKSelector();
+	private int k;
+	private int maxK;
+
+	/* The text, as the letters of every word back to back and where every word ends */
+
+	private char[] letters = new char[1 << 16];
+	private int length;
+	private int[] wordEnds = new int[1 << 12];
+	private int words;
+
+	/* Results */
+
+	private long[] latencies;
+	private int keystrokes;
+	private int scored;
+	private int predicted;
+	private int[] hits;
+	private long[] shrunk;
+	private long allocated;
+	private long allocatedByLetters;
+	private int letterKeystrokes;
+
+	/* Keeps the timed selection from being optimized away */
+
+	private int selected;
+
+	private com.sun.management.ThreadMXBean threads;
+	private long threadId;
+	private long allocationOverhead;
+
+	public ReplayHarness(Predictor predictor, int k, int maxK)
+	{
+		this.predictor = predictor;
+		this.k = k;
+		this.maxK = maxK;
+
+		hits = new int[maxK + 1];
+		shrunk = new long[maxK + 1];
+
+		if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)
+		{
+			threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			threadId = Thread.currentThread().getId();
+
+			if(threads.isThreadAllocatedMemorySupported() == false)
+			{
+				threads = null;
+			}
+			else
+			{
+				threads.setThreadAllocatedMemoryEnabled(true);
+				CalibrateAllocation();
+			}
+		}
+	}
+
+	/**
+	 * Adds the words of a text, a word is a run of latin letters
+	 */
+
+	public void ReadText(Reader reader) throws IOException
+	{
+		int wordLength = 0;
+		int character;
+
+		while((character = reader.read()) >= 0)
+		{
+			char letter = Character.toLowerCase((char) character);
+
+			if(letter >= 'a' && letter <= 'z')
+			{
+				AddLetter(letter);
+				wordLength++;
+			}
+			else if(wordLength > 0)
+			{
+				EndWord();
+				wordLength = 0;
+			}
+		}
+
+		if(wordLength > 0)
+		{
+			EndWord();
+		}
+	}
+
+	/**
+	 * Adds words drawn from a dictionary by their frequency
+	 * @param dictionary The words
+	 * @param frequencies The frequency of every word
+	 * @param count How many words to draw
+	 * @param seed The seed of the drawing
+	 */
+
+	public void Sample(String[] dictionary, long[] frequencies, int count, long seed)
+	{
+		long[] cumulative = new long[frequencies.length];
+		long total = 0;
+
+		for(int i = 0; i < frequencies.length; i++)
+		{
+			total += Math.max(1, frequencies[i]);
+			cumulative[i] = total;
+		}
+
+		Random random = new Random(seed);
+
+		for(int i = 0; i < count; i++)
+		{
+			long draw = (long) (random.nextDouble() * total);
+			int index = Arrays.binarySearch(cumulative, draw + 1);
+			String word = dictionary[index < 0 ? -index - 1 : index];
+
+			for(int j = 0; j < word.length(); j++)
+			{
+				AddLetter(word.charAt(j));
+			}
+
+			EndWord();
+		}
+	}
+
+	public int GetWords()
+	{
+		return words;
+	}
+
+	/**
+	 * Types the text, measuring from the word after the warm up on
+	 */
+
+	public void Replay(int warmupWords) throws Exception
+	{
+		int firstMeasured = warmupWords == 0 || words == 0 ? 0 : wordEnds[Math.min(warmupWords, words) - 1];
+		int measured = words > warmupWords ? length - firstMeasured + words - warmupWords : 0;
+		float[] predictions = new float[TopKSelector.LETTERS];
+		boolean valid;
+
+		latencies = new long[measured];
+
+		predictor.SetNotIdle();
+		valid = predictor.GetPredictions(predictions);
+
+		int start = 0;
+		for(int word = 0; word < words; word++)
+		{
+			boolean measuring = word >= warmupWords;
+
+			for(int i = start; i < wordEnds[word]; i++)
+			{
+				char letter = letters[i];
+
+				if(measuring)
+				{
+					Score(predictions, valid, letter);
+				}
+
+				long allocatedBefore = measuring ? Allocated() : 0;
+				long began = System.nanoTime();
+
+				predictor.CharacterTyped(letter);
+				valid = predictor.GetPredictions(predictions);
+				selected ^= topKSelector.Select(predictions, k);
+
+				long elapsed = System.nanoTime() - began;
+
+				if(measuring)
+				{
+					Measured(elapsed, allocatedBefore, true);
+				}
+			}
+
+			/* The separator */
+
+			long allocatedBefore = measuring ? Allocated() : 0;
+			long began = System.nanoTime();
+
+			predictor.WordTyped();
+			valid = predictor.GetPredictions(predictions);
+			selected ^= topKSelector.Select(predictions, k);
+
+			long elapsed = System.nanoTime() - began;
+
+			if(measuring)
+			{
+				Measured(elapsed, allocatedBefore, false);
+			}
+
+			start = wordEnds[word];
+		}
+	}
+
+	public long GetLatencyPercentile(double percentile)
+	{
+		if(keystrokes == 0)
+		{
+			return 0;
+		}
+
+		long[] sorted = Arrays.copyOf(latencies, keystrokes);
+		Arrays.sort(sorted);
+
+		return sorted[Math.max(0, (int) Math.ceil(percentile * keystrokes) - 1)];
+	}
+
+	/**
+	 * Returns how many bytes a keystroke allocated on average, or -1 if it can't be measured
+	 */
+
+	public double GetAllocationPerKeystroke()
+	{
+		return threads == null ? -1 : keystrokes == 0 ? 0 : (double) allocated / keystrokes;
+	}
+
+	/**
+	 * Returns how many bytes a letter allocated on average, the separators that end
+	 * the words and learn them are left out, or -1 if it can't be measured
+	 */
+
+	public double GetAllocationPerLetter()
+	{
+		return threads == null ? -1 : letterKeystrokes == 0 ? 0 : (double) allocatedByLetters / letterKeystrokes;
+	}
+
+	/**
+	 * Returns the part of the keystrokes that had predictions
+	 */
+
+	public double GetPredicted()
+	{
+		return scored == 0 ? 0 : (double) predicted / scored;
+	}
+
+	/**
+	 * Returns how often the typed key was not shrunk, out of the keystrokes that had predictions
+	 */
+
+	public double GetHitRate(int k)
+	{
+		return predicted == 0 ? 0 : (double) hits[k] / predicted;
+	}
+
+	/**
+	 * Returns how many keys were shrunk on average, out of the keystrokes that had predictions
+	 */
+
+	public double GetShrunk(int k)
+	{
+		return predicted == 0 ? 0 : (double) shrunk[k] / predicted;
+	}
+
+	public int GetKeystrokes()
+	{
+		return keystrokes;
+	}
+
+	/* Scores the predictions that the keyboard shows when the letter is typed */
+
+	private void Score(float[] predictions, boolean valid, char letter)
+	{
+		scored++;
+
+		if(valid == false || topKSelector.Select(predictions, 0) == 0)
+		{
+			return;
+		}
+
+		predicted++;
+
+		for(int i = 0; i <= maxK; i++)
+		{
+			int mask = topKSelector.Select(predictions, i);
+
+			if((mask & TopKSelector.LetterBit(letter)) != 0)
+			{
+				hits[i]++;
+			}
+
+			shrunk[i] += TopKSelector.LETTERS - Integer.bitCount(mask);
+		}
+	}
+
+	private void Measured(long elapsed, long allocatedBefore, boolean letter)
+	{
+		latencies[keystrokes++] = elapsed;
+
+		if(threads != null)
+		{
+			long bytes = Math.max(0, Allocated() - allocatedBefore - allocationOverhead);
+
+			allocated += bytes;
+
+			if(letter)
+			{
+				allocatedByLetters += bytes;
+				letterKeystrokes++;
+			}
+		}
+	}
+
+	private long Allocated()
+	{
+		return threads == null ? 0 : threads.getThreadAllocatedBytes(threadId);
+	}
+
+	/* Reading the counter may allocate itself, that is not counted */
+
+	private void CalibrateAllocation()
+	{
+		allocationOverhead = Long.MAX_VALUE;
+
+		for(int i = 0; i < 1000; i++)
+		{
+			long before = Allocated();
+			allocationOverhead = Math.min(allocationOverhead, Allocated() - before);
+		}
+	}
+
+	private void AddLetter(char letter)
+	{
+		if(length == letters.length)
+		{
+			letters = Arrays.copyOf(letters, length * 2);
+		}
+
+		letters[length++] = letter;
+	}
+
+	private void EndWord()
+	{
+		if(words == wordEnds.length)
+		{
+			wordEnds = Arrays.copyOf(wordEnds, words * 2);
+		}
+
+		wordEnds[words++] = length;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		String dictionary = "Database/words.txt", text = null;
+		int maxWords = Integer.MAX_VALUE, sample = DEFAULT_SAMPLE, warmup = DEFAULT_WARMUP;
+		int k = 2, maxK = 8;
+		long seed = 1;
+		double maxP99 = -1, maxAllocation = -1;
+		ArrayList<String> minHits = new ArrayList<String>();
+
+		for(int i = 0; i < args.length; i++)
+		{
+			if(args[i].equals("--dictionary"))
+				dictionary = args[++i];
+			else if(args[i].equals("--words"))
+				maxWords = Integer.parseInt(args[++i]);
+			else if(args[i].equals("--text"))
+				text = args[++i];
+			else if(args[i].equals("--sample"))
+				sample = Integer.parseInt(args[++i]);
+			else if(args[i].equals("--seed"))
+				seed = Long.parseLong(args[++i]);
+			else if(args[i].equals("--k"))
+				k = Integer.parseInt(args[++i]);
+			else if(args[i].equals("--max-k"))
+				maxK = Integer.parseInt(args[++i]);
+			else if(args[i].equals("--warmup"))
+				warmup = Integer.parseInt(args[++i]);
+			else if(args[i].equals("--max-p99"))
+				maxP99 = Double.parseDouble(args[++i]);
+			else if(args[i].equals("--max-alloc"))
+				maxAllocation = Double.parseDouble(args[++i]);
+			else if(args[i].equals("--min-hit"))
+				minHits.add(args[++i]);
+			else
+			{
+				System.err.println("usage: ReplayHarness [--dictionary words.txt] [--words n] [--text file | --sample n --seed n] [--k n] [--max-k n] [--warmup n] [--max-p99 us] [--max-alloc bytes] [--min-hit k:rate]...");
+				System.exit(2);
+			}
+		}
+
+		/* The dictionary, compiled the same way as the one the keyboard ships with */
+
+		DictionaryCompiler compiler = new DictionaryCompiler();
+		compiler.SetMaxWords(maxWords);
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(dictionary), "UTF-8"), 1 << 16);
+		compiler.Read(reader);
+		reader.close();
+		compiler.Finish();
+
+		InMemoryWordStore store = new InMemoryWordStore();
+		compiler.WriteStore(store);
+
+		ReplayHarness harness = new ReplayHarness(new Predictor(store), k, maxK);
+
+		if(text != null)
+		{
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(text), "UTF-8"), 1 << 16);
+			harness.ReadText(reader);
+			reader.close();
+		}
+		else
+		{
+			final String[] words = new String[store.Size()];
+
+			store.EnumerateWords(0, -1, new WordStore.WordVisitor()
+			{
+				private int i;
+
+				public void Visit(String word, int prior, int usage, long timestamp)
+				{
+					words[i++] = word;
+				}
+			});
+
+			harness.Sample(words, compiler.Frequencies(), sample, seed);
+		}
+
+		harness.Replay(warmup);
+
+		double p99 = harness.GetLatencyPercentile(0.99) / 1000.0;
+
+		System.out.println("words " + harness.GetWords());
+		System.out.println("keystrokes " + harness.GetKeystrokes());
+		System.out.println(String.format("latency_p50_us %.3f", harness.GetLatencyPercentile(0.5) / 1000.0));
+		System.out.println(String.format("latency_p99_us %.3f", p99));
+		System.out.println(String.format("latency_p999_us %.3f", harness.GetLatencyPercentile(0.999) / 1000.0));
+		System.out.println(String.format("alloc_bytes_per_keystroke %.2f", harness.GetAllocationPerKeystroke()));
+		System.out.println(String.format("alloc_bytes_per_letter %.2f", harness.GetAllocationPerLetter()));
+		System.out.println(String.format("predicted %.4f", harness.GetPredicted()));
+
+		for(int i = 0; i <= maxK; i++)
+		{
+			System.out.println(String.format("hit_rate_k%d %.4f", i, harness.GetHitRate(i)));
+			System.out.println(String.format("shrunk_k%d %.2f", i, harness.GetShrunk(i)));
+		}
+
+		boolean failed = false;
+
+		if(maxP99 >= 0 && p99 > maxP99)
+		{
+			System.err.println("GATE FAILED: latency_p99_us " + p99 + " > " + maxP99);
+			failed = true;
+		}
+
+		if(maxAllocation >= 0 && harness.GetAllocationPerKeystroke() > maxAllocation)
+		{
+			System.err.println("GATE FAILED: alloc_bytes_per_keystroke " + harness.GetAllocationPerKeystroke() + " > " + maxAllocation);
+			failed = true;
+		}
+
+		for(String minHit : minHits)
+		{
+			int gateK = Integer.parseInt(minHit.substring(0, minHit.indexOf(':')));
+			double rate = Double.parseDouble(minHit.substring(minHit.indexOf(':') + 1));
+
+			if(gateK > maxK || harness.GetHitRate(gateK) < rate)
+			{
+				System.err.println("GATE FAILED: hit_rate_k" + gateK + " < " + rate);
+				failed = true;
+			}
+		}
+
+		System.exit(failed ? 1 : 0);
+	}
+}
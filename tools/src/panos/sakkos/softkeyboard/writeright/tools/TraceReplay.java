@@ -0,0 +1,193 @@
+/*
+ *    Alternative input method that resizes its virtual keys according to
+ *    usage statistics by the user (when, where and which words were typed.
+ *    Copyright (C) June 2011  Panagiotis Sakkos <panos.sakkos@gmail.com>
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Affero General Public License as
+ *    published by the Free Software Foundation, either version 3 of the
+ *    License, or (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package panos.sakkos.softkeyboard.writeright.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+import panos.sakkos.softkeyboard.writeright.InMemoryWordStore;
+import panos.sakkos.softkeyboard.writeright.KeystrokeTrace;
+import panos.sakkos.softkeyboard.writeright.LatencyStats;
+import panos.sakkos.softkeyboard.writeright.Predictor;
+import panos.sakkos.softkeyboard.writeright.TraceReplayer;
+import panos.sakkos.softkeyboard.writeright.WordStore;
+
+/**
+ * Replays a keystroke trace recorded on a device (adb shell dumpsys input_method trace
+ * start/stop) against the dictionary, and reports the latency of every stage the way
+ * the keyboard's dump() does, the events that took longer than a frame, and what was
+ * learned. The words that were learned and their usage are the same on every replay of
+ * a trace that didn't drop events; learned_digest is a checksum of them, to compare runs.
+ *
+ * Options:
+ *   --dictionary file  Frequency list of the dictionary (default Database/words.txt)
+ *   --words n          Use only the first n distinct words of the list
+ *   --spike us         Report the events that took longer (default 16000)
+ *   --learned          Print every word that was learned, with its usage
+ * @author Panos Sakkos
+ */
+
+public class TraceReplay
+{
+	private static final String[] EVENT_NAMES = { "", "key", "release", "swipe up", "swipe down", "swipe left", "swipe right",
+		"selection", "start input", "finish input" };
+
+	public static void main(String[] args) throws Exception
+	{
+		String dictionary = "Database/words.txt", traceFile = null;
+		int maxWords = Integer.MAX_VALUE;
+		double spike = 16000;
+		boolean printLearned = false;
+
+		for(int i = 0; i < args.length; i++)
+		{
+			if(args[i].equals("--dictionary"))
+				dictionary = args[++i];
+			else if(args[i].equals("--words"))
+				maxWords = Integer.parseInt(args[++i]);
+			else if(args[i].equals("--spike"))
+				spike = Double.parseDouble(args[++i]);
+			else if(args[i].equals("--learned"))
+				printLearned = true;
+			else if(traceFile == null && args[i].startsWith("--") == false)
+				traceFile = args[i];
+			else
+				Usage();
+		}
+
+		if(traceFile == null)
+		{
+			Usage();
+		}
+
+		InputStream input = new BufferedInputStream(new FileInputStream(traceFile));
+		KeystrokeTrace trace = KeystrokeTrace.Read(input);
+		input.close();
+
+		/* The dictionary, compiled the same way as the one the keyboard ships with */
+
+		DictionaryCompiler compiler = new DictionaryCompiler();
+		compiler.SetMaxWords(maxWords);
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(dictionary), "UTF-8"), 1 << 16);
+		compiler.Read(reader);
+		reader.close();
+		compiler.Finish();
+
+		InMemoryWordStore store = new InMemoryWordStore();
+		compiler.WriteStore(store);
+		HashMap<String, Integer> before = Usages(store);
+
+		Predictor predictor = new Predictor(store);
+		LatencyStats stats = new LatencyStats();
+		TraceReplayer replayer = new TraceReplayer(predictor, stats);
+
+		long[] durations = replayer.Replay(trace);
+		predictor.Save();
+
+		System.out.println("events " + trace.GetCount());
+		System.out.println("dropped " + trace.GetDropped());
+		System.out.println("k " + trace.GetK() + " -> " + replayer.GetK());
+		System.out.println("continuous_successes " + trace.GetContinuousSuccesses() + " -> " + replayer.GetContinuousSuccesses());
+
+		/* What was learned, in the order of the store, which is deterministic */
+
+		final HashMap<String, Integer> learned = new HashMap<String, Integer>();
+		final StringBuilder learnedWords = new StringBuilder();
+		final CRC32 digest = new CRC32();
+		HashMap<String, Integer> after = Usages(store);
+
+		for(String word : after.keySet())
+		{
+			Integer usage = before.get(word);
+
+			if(usage == null || usage.intValue() != after.get(word).intValue())
+			{
+				learned.put(word, after.get(word));
+			}
+		}
+
+		store.EnumerateWords(0, -1, new WordStore.WordVisitor()
+		{
+			public void Visit(String word, int prior, int usage, long timestamp)
+			{
+				if(learned.containsKey(word))
+				{
+					digest.update((word + '\t' + usage + '\n').getBytes());
+					learnedWords.append("learned ").append(word).append(' ').append(usage).append('\n');
+				}
+			}
+		});
+
+		System.out.println("learned_words " + learned.size());
+		System.out.println("learned_digest " + Long.toHexString(digest.getValue()));
+
+		if(printLearned)
+		{
+			System.out.print(learnedWords);
+		}
+
+		PrintWriter writer = new PrintWriter(System.out);
+		stats.Dump(writer, "");
+		writer.flush();
+
+		/* The events that would have missed a frame, with the time the user took to get to them */
+
+		for(int i = 0; i < durations.length; i++)
+		{
+			if(durations[i] / 1000.0 > spike)
+			{
+				long since = i == 0 ? 0 : trace.GetTime(i) - trace.GetTime(i - 1);
+				int type = trace.GetType(i);
+
+				System.out.println(String.format("spike %d %s %d %d %.1f us, %.1f ms after the previous event", i,
+					type < EVENT_NAMES.length ? EVENT_NAMES[type] : Integer.toString(type), trace.GetFirst(i), trace.GetSecond(i),
+					durations[i] / 1000.0, since / 1000000.0));
+			}
+		}
+	}
+
+	private static void Usage()
+	{
+		System.err.println("usage: TraceReplay [--dictionary words.txt] [--words n] [--spike us] [--learned] keystrokes.trace");
+		System.exit(2);
+	}
+
+	private static HashMap<String, Integer> Usages(WordStore store)
+	{
+		final HashMap<String, Integer> usages = new HashMap<String, Integer>();
+
+		store.EnumerateWords(0, -1, new WordStore.WordVisitor()
+		{
+			public void Visit(String word, int prior, int usage, long timestamp)
+			{
+				usages.put(word, usage);
+			}
+		});
+
+		return usages;
+	}
+}